@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import com.solana.pay.sample.MintMetadataCache.MintMetadata
+
+/** Metadata for commonly used SPL token mints, bundled so that they never require a lookup */
+object CommonMints {
+    val ALL = listOf(
+        // Mainnet-beta
+        MintMetadata("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v", 6, "USDC"),
+        MintMetadata("Es9vMFrzaCERmJfrF4H2FYD4KCoNkY11McCe8BenwNYB", 6, "USDT"),
+        MintMetadata("2b1kV6DkPAnxd5ixfnxCpjxmKwqjjaYmCZfHsFu24GXo", 6, "PYUSD"),
+        MintMetadata("So11111111111111111111111111111111111111112", 9, "wSOL"),
+        MintMetadata("DezXAZ8z7PnrnRJjz3wXBoRgixCa6xjnB7YaB1pPB263", 5, "BONK"),
+        MintMetadata("JUPyiwrYJFskUPiHa7hkeR8VUtAeFoSYbKedZNsDvCN", 6, "JUP"),
+
+        // Devnet
+        MintMetadata("4zMMC9srt5Ri5X14GAgXhaHii3GnPAEERYPJgZJDncDU", 6, "USDC"),
+    )
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+/**
+ * Tracks the requests currently being handled, so that duplicate deliveries of the same request
+ * (e.g. an NFC tag read several times, or a link which fires twice) can be routed to the task
+ * already handling it instead of being handled again. A request is a duplicate while it is in
+ * flight, and for [windowMs] after it completes successfully, so that a late duplicate cannot
+ * trigger a second payment once the first has finished. A request which fails or is declined can
+ * be retried immediately.
+ */
+class InFlightRequestRegistry<K : Any>(
+    private val windowMs: Long,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    sealed class Registration {
+        /** The request is not a duplicate, and should be handled by the caller */
+        object Accepted : Registration()
+
+        /** The request is a duplicate of one still being handled in task [taskId] */
+        data class InFlight(val taskId: Int) : Registration()
+
+        /** The request is a duplicate of one which completed less than the window ago */
+        object RecentlyCompleted : Registration()
+    }
+
+    data class Stats(
+        val accepted: Long,
+        val duplicatesInFlight: Long,
+        val duplicatesRecentlyCompleted: Long,
+        val inFlight: Int
+    ) {
+        val duplicates: Long get() = duplicatesInFlight + duplicatesRecentlyCompleted
+    }
+
+    private class Entry(var taskId: Int, var completedAtMs: Long?)
+
+    // All state below is guarded by entries
+    private val entries = HashMap<K, Entry>()
+    private var accepted = 0L
+    private var duplicatesInFlight = 0L
+    private var duplicatesRecentlyCompleted = 0L
+
+    /**
+     * Register a newly delivered request
+     * @param key the request
+     * @param taskId the ID of the task which will handle the request, if it is accepted
+     * @return [Registration.Accepted] if the caller should handle the request, or the reason it is
+     *      a duplicate
+     */
+    fun register(key: K, taskId: Int): Registration {
+        val now = clock()
+        synchronized(entries) {
+            pruneExpired(now)
+            val existing = entries[key]
+            return when {
+                existing == null -> {
+                    entries[key] = Entry(taskId, null)
+                    accepted++
+                    Registration.Accepted
+                }
+                existing.completedAtMs == null -> {
+                    duplicatesInFlight++
+                    Registration.InFlight(existing.taskId)
+                }
+                else -> {
+                    duplicatesRecentlyCompleted++
+                    Registration.RecentlyCompleted
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark a request as in flight in task [taskId], regardless of whether it was already
+     * registered. This is for a handler which is recreated (e.g. after a configuration change or
+     * process death) while it is still handling the request.
+     */
+    fun reattach(key: K, taskId: Int) {
+        synchronized(entries) {
+            entries.getOrPut(key) { Entry(taskId, null) }.apply {
+                this.taskId = taskId
+                completedAtMs = null
+            }
+        }
+    }
+
+    /**
+     * Mark a request as complete. If it succeeded, further deliveries of the request are
+     * considered duplicates until [windowMs] has elapsed; otherwise, the request is forgotten.
+     * @param key the request
+     * @param succeeded whether the request was handled successfully (i.e. the payment was made)
+     */
+    fun complete(key: K, succeeded: Boolean) {
+        val now = clock()
+        synchronized(entries) {
+            if (succeeded) {
+                entries[key]?.completedAtMs = now
+            } else {
+                entries.remove(key)
+            }
+        }
+    }
+
+    /** @return a snapshot of the registry's counters */
+    fun stats(): Stats {
+        synchronized(entries) {
+            return Stats(
+                accepted,
+                duplicatesInFlight,
+                duplicatesRecentlyCompleted,
+                entries.values.count { it.completedAtMs == null }
+            )
+        }
+    }
+
+    // Must be called with entries locked
+    private fun pruneExpired(now: Long) {
+        entries.values.removeAll { entry ->
+            entry.completedAtMs?.let { now - it >= windowMs } ?: false
+        }
+    }
+}
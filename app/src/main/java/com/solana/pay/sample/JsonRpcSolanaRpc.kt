@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import android.util.Base64
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.atomic.AtomicInteger
+
+/** A [SolanaRpc] implementation which issues JSON-RPC 2.0 requests over HTTP(S) */
+class JsonRpcSolanaRpc(private val endpoint: URL) : SolanaRpc {
+    private val nextId = AtomicInteger()
+
+    override fun sendTransaction(transaction: ByteArray, skipPreflight: Boolean): String {
+        val config = JSONObject()
+            .put("encoding", "base64")
+            .put("skipPreflight", skipPreflight)
+            .put("maxRetries", 0) // rebroadcasting is managed by the caller
+        val params = JSONArray()
+            .put(Base64.encodeToString(transaction, Base64.NO_WRAP))
+            .put(config)
+        return call("sendTransaction", params) { result ->
+            result as? String ?: throw IOException("sendTransaction returned no signature")
+        }
+    }
+
+    override fun getSignatureStatuses(signatures: List<String>): List<SolanaRpc.SignatureStatus?> {
+        require(signatures.size <= SolanaRpc.MAX_SIGNATURE_STATUSES_PER_REQUEST) {
+            "At most ${SolanaRpc.MAX_SIGNATURE_STATUSES_PER_REQUEST} signatures per request"
+        }
+        val params = JSONArray()
+            .put(JSONArray(signatures))
+            .put(JSONObject().put("searchTransactionHistory", false))
+        return call("getSignatureStatuses", params) { result ->
+            val value = (result as? JSONObject)?.optJSONArray("value")
+                ?: throw IOException("getSignatureStatuses returned no value")
+            if (value.length() != signatures.size) {
+                throw IOException("getSignatureStatuses returned ${value.length()} statuses for ${signatures.size} signatures")
+            }
+            List(value.length()) { i ->
+                value.optJSONObject(i)?.let { status ->
+                    SolanaRpc.SignatureStatus(
+                        status.optString("confirmationStatus").let { SolanaRpc.Commitment.fromValue(it) },
+                        if (status.isNull("err")) null else status.get("err").toString()
+                    )
+                }
+            }
+        }
+    }
+
+    override fun getBlockHeight(): Long {
+        val params = JSONArray().put(JSONObject().put("commitment", SolanaRpc.Commitment.CONFIRMED.value))
+        return call("getBlockHeight", params) { result ->
+            (result as? Number)?.toLong() ?: throw IOException("getBlockHeight returned no block height")
+        }
+    }
+
+    override fun getLatestBlockhash(): SolanaRpc.LatestBlockhash {
+        val params = JSONArray().put(JSONObject().put("commitment", SolanaRpc.Commitment.CONFIRMED.value))
+        return call("getLatestBlockhash", params) { result ->
+            val value = (result as? JSONObject)?.optJSONObject("value")
+                ?: throw IOException("getLatestBlockhash returned no value")
+            SolanaRpc.LatestBlockhash(value.getString("blockhash"), value.getLong("lastValidBlockHeight"))
+        }
+    }
+
+    override fun getRecentPrioritizationFees(accounts: List<String>): List<Long> {
+        val params = JSONArray().put(JSONArray(accounts))
+        return call("getRecentPrioritizationFees", params) { result ->
+            val fees = result as? JSONArray ?: throw IOException("getRecentPrioritizationFees returned no fees")
+            List(fees.length()) { i -> fees.getJSONObject(i).getLong("prioritizationFee") }
+        }
+    }
+
+    override fun getBalance(account: String): Long {
+        val params = JSONArray()
+            .put(account)
+            .put(JSONObject().put("commitment", SolanaRpc.Commitment.CONFIRMED.value))
+        return call("getBalance", params) { result ->
+            ((result as? JSONObject)?.opt("value") as? Number)?.toLong()
+                ?: throw IOException("getBalance returned no value")
+        }
+    }
+
+    override fun getTokenAccountsByOwner(owner: String, mint: String): List<String> {
+        // Only the account addresses are needed; request an empty data slice to keep responses small
+        val config = JSONObject()
+            .put("commitment", SolanaRpc.Commitment.CONFIRMED.value)
+            .put("encoding", "base64")
+            .put("dataSlice", JSONObject().put("offset", 0).put("length", 0))
+        val params = JSONArray()
+            .put(owner)
+            .put(JSONObject().put("mint", mint))
+            .put(config)
+        return call("getTokenAccountsByOwner", params) { result ->
+            val value = (result as? JSONObject)?.optJSONArray("value")
+                ?: throw IOException("getTokenAccountsByOwner returned no value")
+            List(value.length()) { i -> value.getJSONObject(i).getString("pubkey") }
+        }
+    }
+
+    override fun getAccountInfo(account: String): SolanaRpc.AccountInfo? {
+        val config = JSONObject()
+            .put("commitment", SolanaRpc.Commitment.CONFIRMED.value)
+            .put("encoding", "base64")
+        val params = JSONArray().put(account).put(config)
+        return call("getAccountInfo", params) { result ->
+            val value = (result as? JSONObject ?: throw IOException("getAccountInfo returned no result"))
+                .optJSONObject("value") ?: return@call null
+            // Account data is encoded as a [data, encoding] array
+            val data = value.getJSONArray("data").getString(0)
+            val bytes = try {
+                Base64.decode(data, Base64.DEFAULT)
+            } catch (e: IllegalArgumentException) {
+                throw IOException("getAccountInfo returned malformed account data", e)
+            }
+            SolanaRpc.AccountInfo(value.getString("owner"), bytes)
+        }
+    }
+
+    // Issue a request, and extract the response with parse. Malformed responses, including those
+    // which parse cannot extract, are reported as IOExceptions.
+    private inline fun <T> call(method: String, params: JSONArray, parse: (result: Any?) -> T): T {
+        val request = JSONObject()
+            .put("jsonrpc", "2.0")
+            .put("id", nextId.incrementAndGet())
+            .put("method", method)
+            .put("params", params)
+            .toString()
+            .toByteArray(StandardCharsets.UTF_8)
+
+        val connection = endpoint.openConnection() as HttpURLConnection
+        try {
+            connection.requestMethod = "POST"
+            connection.doOutput = true
+            connection.connectTimeout = TIMEOUT_MS
+            connection.readTimeout = TIMEOUT_MS
+            connection.setRequestProperty("Content-Type", "application/json")
+            connection.setFixedLengthStreamingMode(request.size)
+            connection.outputStream.use { it.write(request) }
+
+            if (connection.responseCode != HttpURLConnection.HTTP_OK) {
+                throw IOException("$method failed with HTTP ${connection.responseCode}")
+            }
+            val response = connection.inputStream.bufferedReader(StandardCharsets.UTF_8).use {
+                JSONObject(it.readText())
+            }
+            response.optJSONObject("error")?.let {
+                throw SolanaRpc.RpcException(it.optInt("code"), it.optString("message"))
+            }
+            return parse(response.opt("result"))
+        } catch (e: org.json.JSONException) {
+            throw IOException("Malformed $method response", e)
+        } finally {
+            connection.disconnect()
+        }
+    }
+
+    companion object {
+        private const val TIMEOUT_MS = 10000
+    }
+}
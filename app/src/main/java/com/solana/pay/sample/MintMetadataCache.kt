@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import java.io.File
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+
+/**
+ * A cache of SPL token mint metadata, keyed by the base58-encoded mint address. Lookups are
+ * served, in order, from: the bundled list of common mints; an in-memory LRU cache; a persistent
+ * disk cache; and finally the network. Concurrent lookups of the same mint share a single load.
+ */
+class MintMetadataCache(
+    private val rpc: SolanaRpc,
+    private val scope: CoroutineScope,
+    private val diskCacheFile: File?,
+    private val ioDispatcher: CoroutineDispatcher = Dispatchers.IO,
+    private val maxEntries: Int = 256,
+    bundled: List<MintMetadata> = CommonMints.ALL
+) {
+    data class MintMetadata(
+        val mint: String,
+        val decimals: Int,
+        val symbol: String?
+    )
+
+    /** The account at the requested address is not an initialized SPL token mint */
+    class NotAMintException(message: String) : IOException(message)
+
+    // Bundled mints are never evicted
+    private val bundled: Map<String, MintMetadata> = bundled.associateBy { it.mint }
+
+    // Guarded by itself
+    private val memory = object : LinkedHashMap<String, MintMetadata>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, MintMetadata>?): Boolean =
+            size > maxEntries
+    }
+
+    // Guarded by memory
+    private val inFlight = HashMap<String, Deferred<MintMetadata>>()
+
+    // Held while the disk cache is loaded, so that lookups wait for it rather than going to the
+    // network
+    private val diskLock = Any()
+
+    // Written under diskLock
+    @Volatile
+    private var diskLoaded = false
+
+    /** Get the metadata for mint if it is available without any I/O, or null otherwise */
+    fun getIfPresent(mint: String): MintMetadata? {
+        bundled[mint]?.let { return it }
+        return synchronized(memory) { memory[mint] }
+    }
+
+    /**
+     * Get the metadata for mint, loading it from disk or the network if necessary
+     * @throws IOException if the metadata could not be fetched, or mint is not a token mint
+     */
+    suspend fun get(mint: String): MintMetadata {
+        getIfPresent(mint)?.let { return it }
+
+        val load = synchronized(memory) {
+            memory[mint]?.let { return it }
+            inFlight.getOrPut(mint) {
+                scope.async(ioDispatcher) { load(mint) }.also { deferred ->
+                    deferred.invokeOnCompletion { synchronized(memory) { inFlight.remove(mint) } }
+                }
+            }
+        }
+        return load.await()
+    }
+
+    private fun load(mint: String): MintMetadata {
+        loadDiskCache()
+        synchronized(memory) { memory[mint] }?.let { return it }
+
+        val account = rpc.getAccountInfo(mint) ?: throw NotAMintException("Mint $mint does not exist")
+        val metadata = parseMint(mint, account)
+        synchronized(memory) { memory[mint] = metadata }
+        appendToDiskCache(metadata)
+        return metadata
+    }
+
+    private fun loadDiskCache() {
+        val file = diskCacheFile ?: return
+        if (diskLoaded) return
+        synchronized(diskLock) {
+            if (diskLoaded) return
+            try {
+                readDiskCache(file)
+            } finally {
+                diskLoaded = true
+            }
+        }
+    }
+
+    private fun readDiskCache(file: File) {
+        val entries = try {
+            if (!file.exists()) return
+            file.readLines(StandardCharsets.UTF_8).mapNotNull { parseDiskCacheLine(it) }
+        } catch (e: IOException) {
+            return // the disk cache is best-effort
+        }
+
+        synchronized(memory) {
+            // Entries are appended in load order; keep the most recently loaded ones
+            for (entry in entries.takeLast(maxEntries)) {
+                if (entry.mint !in memory) {
+                    memory[entry.mint] = entry
+                }
+            }
+        }
+
+        if (entries.size > maxEntries * 2) {
+            compactDiskCache(file)
+        }
+    }
+
+    private fun appendToDiskCache(metadata: MintMetadata) {
+        val file = diskCacheFile ?: return
+        try {
+            synchronized(file) {
+                file.appendText(formatDiskCacheLine(metadata), StandardCharsets.UTF_8)
+            }
+        } catch (e: IOException) {
+            // the disk cache is best-effort
+        }
+    }
+
+    private fun compactDiskCache(file: File) {
+        val snapshot = synchronized(memory) { ArrayList(memory.values) }
+        try {
+            synchronized(file) {
+                val tmp = File(file.path + ".tmp")
+                tmp.writeText(snapshot.joinToString("") { formatDiskCacheLine(it) }, StandardCharsets.UTF_8)
+                if (!tmp.renameTo(file)) {
+                    tmp.delete()
+                }
+            }
+        } catch (e: IOException) {
+            // the disk cache is best-effort
+        }
+    }
+
+    companion object {
+        private const val TOKEN_PROGRAM_ID = "TokenkegQfeZyiNwAJbNbGKPFXCWuBvf9Ss623VQ5DA"
+        private const val TOKEN_2022_PROGRAM_ID = "TokenzQdBNbLqP5VEhdkAS6EPFLC1PhnBqCXEpPxuEb"
+
+        // SPL token mint layout: mint_authority (36), supply (8), decimals (1), is_initialized (1),
+        // freeze_authority (36)
+        private const val MINT_SIZE = 82
+        private const val MINT_DECIMALS_OFFSET = 44
+        private const val MINT_IS_INITIALIZED_OFFSET = 45
+
+        /**
+         * Parse the metadata from the account info of an SPL token (or token-2022) mint. The symbol
+         * is not stored in the mint itself, and so is not available.
+         * @throws NotAMintException if account is not an initialized SPL token mint
+         */
+        fun parseMint(mint: String, account: SolanaRpc.AccountInfo): MintMetadata {
+            if (account.owner != TOKEN_PROGRAM_ID && account.owner != TOKEN_2022_PROGRAM_ID) {
+                throw NotAMintException("Account $mint is not owned by a token program")
+            }
+            if (account.data.size < MINT_SIZE || account.data[MINT_IS_INITIALIZED_OFFSET] != 1.toByte()) {
+                throw NotAMintException("Account $mint is not an initialized mint")
+            }
+            return MintMetadata(mint, account.data[MINT_DECIMALS_OFFSET].toInt() and 0xff, null)
+        }
+
+        private fun formatDiskCacheLine(metadata: MintMetadata): String =
+            "${metadata.mint}\t${metadata.decimals}\t${metadata.symbol ?: ""}\n"
+
+        private fun parseDiskCacheLine(line: String): MintMetadata? {
+            val fields = line.split('\t')
+            if (fields.size != 3) return null
+            // Decimals is a u8; any other value means the line is corrupt
+            val decimals = fields[1].toIntOrNull()?.takeIf { it in 0..255 } ?: return null
+            return MintMetadata(fields[0], decimals, fields[2].ifEmpty { null })
+        }
+    }
+}
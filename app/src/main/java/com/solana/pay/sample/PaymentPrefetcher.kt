@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import com.solana.pay.AssociatedTokenAccounts
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+
+/**
+ * Speculatively fetches the cluster and account state needed to build and sign a transfer, as soon
+ * as a Solana Pay Transfer Request arrives. All fetches are started concurrently, and their results
+ * are cached for a short time and shared between requests, so that signing can begin as soon as the
+ * user authorizes the payment.
+ *
+ * Transaction Requests are not prefetched; the merchant builds those transactions, including their
+ * blockhash and priority fee.
+ */
+class PaymentPrefetcher(
+    private val rpc: SolanaRpc,
+    scope: CoroutineScope,
+    ioDispatcher: CoroutineDispatcher = Dispatchers.IO,
+    blockhashTtlMs: Long = 15000,
+    priorityFeeTtlMs: Long = 10000,
+    tokenAccountTtlMs: Long = 30000,
+    clock: () -> Long = System::currentTimeMillis,
+    private val associatedTokenAccounts: AssociatedTokenAccounts = AssociatedTokenAccounts()
+) {
+    /** The in-progress (or completed) fetches for a single transfer */
+    data class Prefetch(
+        val latestBlockhash: Deferred<SolanaRpc.LatestBlockhash>,
+        val priorityFee: Deferred<Long>,
+        val recipientTokenAccountExists: Deferred<Boolean>?
+    ) {
+        /** Await all fetches, throwing if any of them failed */
+        suspend fun awaitAll() {
+            latestBlockhash.await()
+            priorityFee.await()
+            recipientTokenAccountExists?.await()
+        }
+    }
+
+    private val latestBlockhashCache = TtlCache<Unit, SolanaRpc.LatestBlockhash>(scope, ioDispatcher, blockhashTtlMs, clock)
+    private val priorityFeeCache = TtlCache<List<String>, Long>(scope, ioDispatcher, priorityFeeTtlMs, clock)
+    private val tokenAccountCache = TtlCache<String, Boolean>(scope, ioDispatcher, tokenAccountTtlMs, clock)
+
+    /**
+     * Start (or join) the fetches for a transfer
+     * @param recipient the base58-encoded transfer recipient
+     * @param splToken the base58-encoded SPL token mint, or null for native SOL transfers
+     * @throws IllegalArgumentException if recipient or splToken are not base58-encoded public keys
+     */
+    fun prefetch(recipient: String, splToken: String?): Prefetch {
+        // The recipient's associated token account (for the SPL Token program) is the account a
+        // token transfer credits. Token-2022 mints are not recognized here, and are reported as
+        // having no recipient token account.
+        val recipientTokenAccount = splToken?.let { associatedTokenAccounts.deriveAddress(recipient, it) }
+
+        // Priority fees are estimated from recent transactions that write-lock the same account
+        val writableAccounts = listOf(recipientTokenAccount ?: recipient)
+
+        return Prefetch(
+            latestBlockhashCache.get(Unit) { rpc.getLatestBlockhash() },
+            priorityFeeCache.get(writableAccounts) {
+                estimatePriorityFee(rpc.getRecentPrioritizationFees(writableAccounts))
+            },
+            recipientTokenAccount?.let { account ->
+                tokenAccountCache.get(account) { rpc.getAccountInfo(account) != null }
+            }
+        )
+    }
+    companion object {
+        private const val PRIORITY_FEE_PERCENTILE = 75
+
+        /**
+         * Estimate a priority fee (in micro-lamports per compute unit) from recent prioritization
+         * fees. Returns the [PRIORITY_FEE_PERCENTILE]th percentile, or 0 if fees is empty.
+         */
+        fun estimatePriorityFee(fees: List<Long>): Long {
+            if (fees.isEmpty()) {
+                return 0L
+            }
+            val sorted = fees.sorted()
+            return sorted[(sorted.size - 1) * PRIORITY_FEE_PERCENTILE / 100]
+        }
+    }
+}
@@ -5,6 +5,8 @@
 package com.solana.pay.sample
 
 import android.app.Activity
+import android.app.ActivityManager
+import android.content.Context
 import android.content.Intent
 import android.os.Bundle
 import android.util.Log
@@ -13,12 +15,18 @@ import androidx.lifecycle.lifecycleScope
 import com.solana.digitalassetlinks.AndroidAppPackageVerifier
 import com.solana.pay.SolanaPayAndroidContract
 import com.solana.pay.SolanaPayTransactionRequest
+import com.solana.pay.SolanaPayTransferRequest
 import com.solana.pay.SolanaPayURI
 import com.solana.pay.sample.databinding.ActivitySolanaPayBinding
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
 import java.net.URI
+import java.net.URL
 import kotlin.random.Random
 
 class SolanaPayActivity : AppCompatActivity() {
@@ -27,20 +35,26 @@ class SolanaPayActivity : AppCompatActivity() {
     private lateinit var entrypoint: Entrypoint
     private lateinit var sourceVerificationStatus: SourceVerification
     private lateinit var solanaPayUri: SolanaPayURI
+    private var prefetch: PaymentPrefetcher.Prefetch? = null
 
     private var verifier: AndroidAppPackageVerifier? = null
 
+    // The request this activity instance is handling, once it has been registered as in flight
+    private var registeredRequest: SolanaPayURI? = null
+
+    // Whether the request was paid (i.e. this activity finished with RESULT_OK)
+    private var paid = false
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
-        viewBinding = ActivitySolanaPayBinding.inflate(layoutInflater)
-        setContentView(viewBinding.root)
-
         setResult(Activity.RESULT_CANCELED)
 
         val uri = intent.data
         if (uri != null) {
             try {
+                // Strict recipient validation is not used: the Solana Pay spec permits off-curve
+                // recipients, such as program derived addresses
                 solanaPayUri = SolanaPayURI.parse(uri)
             } catch (e: IllegalArgumentException) {
                 Log.e(TAG, "Invalid Solana Pay URI provided", e)
@@ -55,21 +69,48 @@ class SolanaPayActivity : AppCompatActivity() {
         }
         Log.d(TAG, "Received Solana Pay URI=$solanaPayUri")
 
+        // Route duplicate deliveries of this request to the existing handler, before doing any
+        // further work for it. Only requests which parsed successfully are registered.
+        if (savedInstanceState == null) {
+            when (val registration = requestRegistry.register(solanaPayUri, taskId)) {
+                InFlightRequestRegistry.Registration.Accepted -> {}
+                is InFlightRequestRegistry.Registration.InFlight -> {
+                    Log.i(TAG, "Duplicate Solana Pay URI; already in flight in task ${registration.taskId} (${requestRegistry.stats()})")
+                    if (registration.taskId != taskId) {
+                        getSystemService(ActivityManager::class.java).moveTaskToFront(registration.taskId, 0)
+                    }
+                    finish()
+                    return
+                }
+                InFlightRequestRegistry.Registration.RecentlyCompleted -> {
+                    Log.i(TAG, "Duplicate Solana Pay URI; already completed (${requestRegistry.stats()})")
+                    finish()
+                    return
+                }
+            }
+        } else {
+            requestRegistry.reattach(solanaPayUri, taskId)
+        }
+        registeredRequest = solanaPayUri
+
+        viewBinding = ActivitySolanaPayBinding.inflate(layoutInflater)
+        setContentView(viewBinding.root)
+
+        // Start fetching the state needed to sign while the user reviews the request
+        startPrefetch()
+
         deriveEntrypoint()
         doSourceVerification()
 
         viewBinding.apply {
             btnSimulateAuthorizeSubmit.setOnClickListener {
                 Log.d(TAG, "Simulating authorization and successful submission of transaction")
-                val result = Intent().putExtra(SolanaPayAndroidContract.EXTRA_SIGNATURE, createFakeTransactionSignatureBase58())
-                setResult(Activity.RESULT_OK, result)
-                finish()
+                logPrefetchedState()
+                finishWithSubmissionResult(TransactionSubmitter.Result.Confirmed(createFakeTransactionSignatureBase58()))
             }
             btnSimulateAuthorizeButSubmitError.setOnClickListener {
                 Log.d(TAG, "Simulating authorization and unsuccessful submission of transaction")
-                val result = Intent().putExtra(SolanaPayAndroidContract.EXTRA_SIGNATURE, createFakeTransactionSignatureBase58())
-                setResult(SolanaPayAndroidContract.RESULT_FAILED, result)
-                finish()
+                finishWithSubmissionResult(TransactionSubmitter.Result.Expired(createFakeTransactionSignatureBase58()))
             }
             btnSimulateNotAuthorized.setOnClickListener {
                 Log.d(TAG, "Simulating user declined to authorize transaction")
@@ -89,12 +130,52 @@ class SolanaPayActivity : AppCompatActivity() {
     override fun onDestroy() {
         super.onDestroy()
 
+        if (!isChangingConfigurations) {
+            registeredRequest?.let { requestRegistry.complete(it, paid) }
+        }
+
         verifier?.let {
             it.cancel()
             verifier = null
         }
     }
 
+    private fun startPrefetch() {
+        // Transaction Requests are built by the merchant, so there is nothing to prefetch for them
+        val transferRequest = solanaPayUri as? SolanaPayTransferRequest ?: return
+        val splToken = transferRequest.queryParametersUri.getQueryParameter(
+            SolanaPayAndroidContract.QUERY_PARAMETER_SPL_TOKEN)
+        try {
+            prefetch = paymentPrefetcher.prefetch(transferRequest.recipient, splToken)
+        } catch (e: IllegalArgumentException) {
+            Log.w(TAG, "Unable to prefetch state for transfer", e)
+        }
+
+        // The mint decimals are needed to display and convert the requested amount
+        splToken?.let { mint ->
+            lifecycleScope.launch {
+                try {
+                    val metadata = getMintMetadataCache(this@SolanaPayActivity).get(mint)
+                    Log.d(TAG, "Mint $mint: symbol=${metadata.symbol}, decimals=${metadata.decimals}")
+                } catch (e: IOException) {
+                    Log.w(TAG, "Unable to fetch metadata for mint $mint", e)
+                }
+            }
+        }
+    }
+
+    // This sample only simulates signing, so nothing consumes the prefetched state yet. A wallet
+    // would await prefetch here, and build its transaction with the prefetched blockhash (and
+    // lastValidBlockHeight, for TransactionSubmitter.submit) and priority fee.
+    private fun logPrefetchedState() {
+        val prefetch = prefetch ?: return
+        if (prefetch.latestBlockhash.isCompleted && prefetch.priorityFee.isCompleted) {
+            Log.d(TAG, "Prefetched state ready; signing can start immediately")
+        } else {
+            Log.d(TAG, "Prefetched state not yet ready; signing would wait for it")
+        }
+    }
+
     private fun deriveEntrypoint() {
         entrypoint = when (componentName!!.shortClassName) {
             ".SolanaPayActivityViaNFC" -> Entrypoint.NFC
@@ -187,6 +268,23 @@ class SolanaPayActivity : AppCompatActivity() {
         }
     }
 
+    private fun finishWithSubmissionResult(result: TransactionSubmitter.Result) {
+        val resultCode = when (result) {
+            is TransactionSubmitter.Result.Confirmed -> Activity.RESULT_OK
+            is TransactionSubmitter.Result.Failed -> {
+                Log.w(TAG, "Transaction ${result.signature} failed: ${result.error}")
+                SolanaPayAndroidContract.RESULT_FAILED
+            }
+            is TransactionSubmitter.Result.Expired -> {
+                Log.w(TAG, "Transaction ${result.signature} expired before confirmation")
+                SolanaPayAndroidContract.RESULT_FAILED
+            }
+        }
+        setResult(resultCode, Intent().putExtra(SolanaPayAndroidContract.EXTRA_SIGNATURE, result.signature))
+        paid = resultCode == Activity.RESULT_OK
+        finish()
+    }
+
     private fun createFakeTransactionSignatureBase58(): String = Base58EncodeUseCase(Random.Default.nextBytes(64))
 
     private enum class Entrypoint {
@@ -199,5 +297,37 @@ class SolanaPayActivity : AppCompatActivity() {
 
     companion object {
         private val TAG = SolanaPayActivity::class.simpleName
+
+        // NOTE: this sample wallet operates against devnet
+        private val RPC_ENDPOINT = URL("https://api.devnet.solana.com")
+
+        private val rpc: SolanaRpc by lazy { JsonRpcSolanaRpc(RPC_ENDPOINT) }
+
+        // Background work which may outlive any individual request
+        private val backgroundScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+        // Requests currently being handled, shared by all instances of this activity
+        private val requestRegistry = InFlightRequestRegistry<SolanaPayURI>(DUPLICATE_REQUEST_WINDOW_MS)
+
+        // Shared by all requests, so that prefetched state can be reused across them
+        private val paymentPrefetcher by lazy { PaymentPrefetcher(rpc, backgroundScope) }
+
+        @Volatile
+        private var mintMetadataCache: MintMetadataCache? = null
+
+        private fun getMintMetadataCache(context: Context): MintMetadataCache {
+            return mintMetadataCache ?: synchronized(this) {
+                mintMetadataCache ?: MintMetadataCache(
+                    rpc,
+                    backgroundScope,
+                    File(context.applicationContext.filesDir, MINT_METADATA_CACHE_FILE_NAME)
+                ).also { mintMetadataCache = it }
+            }
+        }
+
+        private const val MINT_METADATA_CACHE_FILE_NAME = "mint_metadata.tsv"
+
+        // Deliveries of a request within this long of it completing are treated as duplicates
+        private const val DUPLICATE_REQUEST_WINDOW_MS = 5000L
     }
 }
\ No newline at end of file
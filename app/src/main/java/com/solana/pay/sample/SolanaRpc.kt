@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import java.io.IOException
+
+/**
+ * The subset of the Solana JSON-RPC API used by the sample wallet. All methods are blocking, and
+ * should be invoked from an IO thread.
+ */
+interface SolanaRpc {
+    /**
+     * Submit a signed, serialized transaction to the cluster
+     * @return the base58-encoded transaction signature
+     */
+    @Throws(IOException::class)
+    fun sendTransaction(transaction: ByteArray, skipPreflight: Boolean): String
+
+    /**
+     * Fetch the statuses of a batch of base58-encoded transaction signatures
+     * @return a list of the same size as signatures, with null entries for unknown signatures
+     */
+    @Throws(IOException::class)
+    fun getSignatureStatuses(signatures: List<String>): List<SignatureStatus?>
+
+    /** Fetch the current block height of the cluster */
+    @Throws(IOException::class)
+    fun getBlockHeight(): Long
+
+    /** Fetch the latest blockhash, and the last block height at which it will be valid */
+    @Throws(IOException::class)
+    fun getLatestBlockhash(): LatestBlockhash
+
+    /**
+     * Fetch the prioritization fees (in micro-lamports per compute unit) paid in recent slots by
+     * transactions that write-lock all of the specified base58-encoded accounts
+     */
+    @Throws(IOException::class)
+    fun getRecentPrioritizationFees(accounts: List<String>): List<Long>
+
+    /** Fetch the balance, in lamports, of a base58-encoded account */
+    @Throws(IOException::class)
+    fun getBalance(account: String): Long
+
+    /**
+     * Fetch the base58-encoded addresses of the token accounts owned by owner for the specified
+     * base58-encoded mint
+     */
+    @Throws(IOException::class)
+    fun getTokenAccountsByOwner(owner: String, mint: String): List<String>
+
+    /**
+     * Fetch the owner and data of a base58-encoded account
+     * @return the account info, or null if the account does not exist
+     */
+    @Throws(IOException::class)
+    fun getAccountInfo(account: String): AccountInfo?
+
+    class AccountInfo(
+        val owner: String,
+        val data: ByteArray
+    )
+
+    data class LatestBlockhash(
+        val blockhash: String,
+        val lastValidBlockHeight: Long
+    )
+
+    data class SignatureStatus(
+        val confirmationStatus: Commitment?,
+        val err: String?
+    )
+
+    enum class Commitment(val value: String) {
+        PROCESSED("processed"), CONFIRMED("confirmed"), FINALIZED("finalized");
+
+        companion object {
+            fun fromValue(value: String): Commitment? = values().firstOrNull { it.value == value }
+        }
+    }
+
+    /** The RPC endpoint returned a JSON-RPC error object */
+    class RpcException(val code: Int, message: String) : IOException("RPC error $code: $message")
+
+    companion object {
+        /** Maximum number of signatures accepted by a single getSignatureStatuses request */
+        const val MAX_SIGNATURE_STATUSES_PER_REQUEST = 256
+    }
+}
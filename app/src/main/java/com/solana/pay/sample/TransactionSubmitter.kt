@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.IOException
+
+/**
+ * Submits signed transactions and tracks them to confirmation. Each transaction is rebroadcast
+ * periodically until it is confirmed, fails, or its blockhash expires. The confirmation status of
+ * all in-flight transactions is tracked by a single polling loop, which batches signatures into
+ * as few getSignatureStatuses requests as possible.
+ */
+class TransactionSubmitter(
+    private val rpc: SolanaRpc,
+    private val scope: CoroutineScope,
+    private val ioDispatcher: CoroutineDispatcher = Dispatchers.IO,
+    private val commitment: SolanaRpc.Commitment = SolanaRpc.Commitment.CONFIRMED,
+    private val pollIntervalMs: Long = 400,
+    private val rebroadcastIntervalMs: Long = 2000,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    sealed class Result {
+        abstract val signature: String
+
+        /** The transaction reached the requested commitment without error */
+        data class Confirmed(override val signature: String) : Result()
+
+        /** The transaction was rejected, or was executed with an error */
+        data class Failed(override val signature: String, val error: String) : Result()
+
+        /** The transaction blockhash expired before the transaction was confirmed */
+        data class Expired(override val signature: String) : Result()
+    }
+
+    private class InFlight(
+        val signature: String,
+        val transaction: ByteArray,
+        val lastValidBlockHeight: Long,
+        var lastSentAtMs: Long
+    ) {
+        val result = CompletableDeferred<Result>()
+    }
+
+    // Guarded by itself
+    private val inFlight = LinkedHashMap<String, InFlight>()
+
+    // Guarded by inFlight
+    private var confirmationLoop: Job? = null
+
+    /** The number of transactions currently awaiting confirmation */
+    val inFlightCount: Int
+        get() = synchronized(inFlight) { inFlight.size }
+
+    /**
+     * Submit a signed transaction, and suspend until it is confirmed, fails, or expires. Submitting
+     * a transaction which is already in flight joins the existing submission.
+     * @param transaction the signed, serialized transaction
+     * @param lastValidBlockHeight the last block height at which the transaction blockhash is valid
+     * @throws IOException if the submitter's scope is cancelled before the transaction outcome is
+     *      known. The transaction may still land; it must not be treated as failed.
+     *
+     * If the caller is cancelled, the transaction remains tracked (and rebroadcast) until its
+     * outcome is known, since it may already have been broadcast. Submitting it again joins that
+     * tracking.
+     */
+    suspend fun submit(transaction: ByteArray, lastValidBlockHeight: Long): Result {
+        val signature = transactionSignature(transaction)
+
+        var existing: InFlight? = null
+        val entry = synchronized(inFlight) {
+            existing = inFlight[signature]
+            existing ?: InFlight(signature, transaction, lastValidBlockHeight, clock()).also {
+                inFlight[signature] = it
+            }
+        }
+        existing?.let { return it.result.await() }
+
+        try {
+            // The first broadcast runs preflight checks, so that invalid transactions fail fast
+            withContext(ioDispatcher) { rpc.sendTransaction(transaction, false) }
+        } catch (e: SolanaRpc.RpcException) {
+            complete(entry, Result.Failed(signature, e.message ?: "sendTransaction failed"))
+            return entry.result.await()
+        } catch (e: IOException) {
+            // Transient failure; the confirmation loop will rebroadcast the transaction
+            entry.lastSentAtMs = 0L
+        } finally {
+            // Also reached if the caller is cancelled during the first broadcast. The entry is
+            // already in flight, and only the confirmation loop will ever remove it.
+            if (!entry.result.isCompleted) {
+                startConfirmationLoop()
+            }
+        }
+
+        return entry.result.await()
+    }
+
+    private fun startConfirmationLoop() {
+        synchronized(inFlight) {
+            if (confirmationLoop?.isActive != true) {
+                val loop = scope.launch(ioDispatcher) { runConfirmationLoop() }
+                confirmationLoop = loop
+                loop.invokeOnCompletion { cause -> if (cause != null) abandonInFlight(cause) }
+            }
+        }
+    }
+
+    private suspend fun runConfirmationLoop() {
+        while (true) {
+            delay(pollIntervalMs)
+
+            val pending = synchronized(inFlight) {
+                if (inFlight.isEmpty()) {
+                    confirmationLoop = null
+                    return
+                }
+                ArrayList(inFlight.values)
+            }
+
+            try {
+                // The block height must be read before the statuses. A transaction which is
+                // unconfirmed after the blockhash had already expired can never land; one which
+                // is unconfirmed before it expired still might.
+                val blockHeight = rpc.getBlockHeight()
+                updateStatuses(pending)
+                expireStale(pending, blockHeight)
+            } catch (e: IOException) {
+                // Transient RPC failure; retry on the next iteration
+            }
+
+            rebroadcast(pending)
+        }
+    }
+
+    private fun updateStatuses(pending: List<InFlight>) {
+        for (batch in pending.chunked(SolanaRpc.MAX_SIGNATURE_STATUSES_PER_REQUEST)) {
+            val statuses = rpc.getSignatureStatuses(batch.map { it.signature })
+            for (i in batch.indices) {
+                val status = statuses[i] ?: continue
+                if (status.err != null) {
+                    complete(batch[i], Result.Failed(batch[i].signature, status.err))
+                } else if (status.confirmationStatus != null && status.confirmationStatus >= commitment) {
+                    complete(batch[i], Result.Confirmed(batch[i].signature))
+                }
+            }
+        }
+    }
+
+    // blockHeight must have been read before the statuses of pending were last updated
+    private fun expireStale(pending: List<InFlight>, blockHeight: Long) {
+        for (entry in pending) {
+            if (!entry.result.isCompleted && entry.lastValidBlockHeight < blockHeight) {
+                complete(entry, Result.Expired(entry.signature))
+            }
+        }
+    }
+
+    private fun rebroadcast(pending: List<InFlight>) {
+        val now = clock()
+        for (entry in pending) {
+            if (entry.result.isCompleted || now - entry.lastSentAtMs < rebroadcastIntervalMs) {
+                continue
+            }
+            entry.lastSentAtMs = now
+            // Rebroadcasts are pipelined; they do not hold up confirmation polling
+            scope.launch(ioDispatcher) {
+                try {
+                    rpc.sendTransaction(entry.transaction, true)
+                } catch (e: IOException) {
+                    // Ignored; the transaction will be rebroadcast again until it expires
+                }
+            }
+        }
+    }
+
+    // The confirmation loop has been cancelled (or failed); release all callers awaiting an outcome
+    private fun abandonInFlight(cause: Throwable) {
+        val abandoned = synchronized(inFlight) {
+            ArrayList(inFlight.values).also { inFlight.clear() }
+        }
+        for (entry in abandoned) {
+            entry.result.completeExceptionally(IOException("Transaction confirmation was cancelled", cause))
+        }
+    }
+
+    private fun complete(entry: InFlight, result: Result) {
+        synchronized(inFlight) {
+            inFlight.remove(entry.signature)
+        }
+        entry.result.complete(result)
+    }
+
+    companion object {
+        private const val SIGNATURE_SIZE = 64
+
+        /**
+         * Extract the transaction signature (the first signature) from a serialized transaction
+         * @throws IllegalArgumentException if transaction is malformed or unsigned
+         */
+        fun transactionSignature(transaction: ByteArray): String {
+            // The signature count is a compact-u16; the first signature immediately follows it
+            var offset = 0
+            var numSignatures = 0
+            var shift = 0
+            while (true) {
+                require(offset < transaction.size && shift <= 14) { "Malformed signature count" }
+                val b = transaction[offset++].toInt() and 0xff
+                numSignatures = numSignatures or ((b and 0x7f) shl shift)
+                if (b and 0x80 == 0) break
+                shift += 7
+            }
+            require(numSignatures > 0) { "Transaction has no signatures" }
+            require(transaction.size >= offset + SIGNATURE_SIZE) { "Transaction is truncated" }
+            val signature = transaction.copyOfRange(offset, offset + SIGNATURE_SIZE)
+            require(signature.any { it != 0.toByte() }) { "Transaction is not signed" }
+            return Base58EncodeUseCase(signature)
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+
+/**
+ * A cache of asynchronously loaded values, each of which expires a fixed time after it was
+ * requested. Concurrent requests for the same key share a single load, and failed loads are
+ * evicted immediately so that the next request retries.
+ */
+class TtlCache<K : Any, V>(
+    private val scope: CoroutineScope,
+    private val dispatcher: CoroutineDispatcher,
+    private val ttlMs: Long,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    private class Entry<V>(val value: Deferred<V>, val createdAtMs: Long)
+
+    // Guarded by itself
+    private val entries = HashMap<K, Entry<V>>()
+
+    /**
+     * Get the cached value for key, or start loading it with loader if it is absent or expired
+     * @return a [Deferred] which completes with the value, or with the exception thrown by loader
+     */
+    fun get(key: K, loader: () -> V): Deferred<V> {
+        val now = clock()
+        synchronized(entries) {
+            entries[key]?.let {
+                if (now - it.createdAtMs < ttlMs) {
+                    return it.value
+                }
+            }
+            val entry = Entry(scope.async(dispatcher) { loader() }, now)
+            entries[key] = entry
+            entry.value.invokeOnCompletion { cause ->
+                if (cause != null) {
+                    synchronized(entries) {
+                        if (entries[key] === entry) {
+                            entries.remove(key)
+                        }
+                    }
+                }
+            }
+            pruneExpired(now)
+            return entry.value
+        }
+    }
+
+    /** Remove all cached values */
+    fun clear() {
+        synchronized(entries) { entries.clear() }
+    }
+
+    // Must be called with entries locked
+    private fun pruneExpired(now: Long) {
+        entries.values.removeAll { now - it.createdAtMs >= ttlMs && it.value.isCompleted }
+    }
+}
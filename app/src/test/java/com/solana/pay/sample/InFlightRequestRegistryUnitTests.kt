@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class InFlightRequestRegistryUnitTests {
+    private var now = 0L
+    private val registry = InFlightRequestRegistry<String>(WINDOW_MS) { now }
+
+    @Test
+    fun testDuplicateWhileInFlight() {
+        assertEquals(InFlightRequestRegistry.Registration.Accepted, registry.register(URI_A, 1))
+        now += 10 * WINDOW_MS // in flight requests never expire
+        assertEquals(InFlightRequestRegistry.Registration.InFlight(1), registry.register(URI_A, 2))
+        assertEquals(InFlightRequestRegistry.Registration.InFlight(1), registry.register(URI_A, 3))
+
+        // Other requests are unaffected
+        assertEquals(InFlightRequestRegistry.Registration.Accepted, registry.register(URI_B, 4))
+
+        assertEquals(InFlightRequestRegistry.Stats(2, 2, 0, 2), registry.stats())
+    }
+
+    @Test
+    fun testDuplicateWithinWindowAfterCompletion() {
+        registry.register(URI_A, 1)
+        now += 1000
+        registry.complete(URI_A, true)
+
+        now += WINDOW_MS - 1
+        assertEquals(InFlightRequestRegistry.Registration.RecentlyCompleted, registry.register(URI_A, 2))
+        now += 1
+        assertEquals(InFlightRequestRegistry.Registration.Accepted, registry.register(URI_A, 3))
+
+        val stats = registry.stats()
+        assertEquals(2L, stats.accepted)
+        assertEquals(1L, stats.duplicates)
+        assertEquals(1, stats.inFlight)
+    }
+
+    @Test
+    fun testUnsuccessfulCompletionAllowsRetry() {
+        registry.register(URI_A, 1)
+        registry.complete(URI_A, false)
+
+        assertEquals(InFlightRequestRegistry.Registration.Accepted, registry.register(URI_A, 2))
+        assertEquals(InFlightRequestRegistry.Stats(2, 0, 0, 1), registry.stats())
+    }
+
+    @Test
+    fun testReattach() {
+        registry.register(URI_A, 1)
+        registry.complete(URI_A, true)
+
+        // A recreated handler takes ownership again, even if the request had been completed
+        registry.reattach(URI_A, 5)
+        assertEquals(InFlightRequestRegistry.Registration.InFlight(5), registry.register(URI_A, 6))
+
+        // ...or if the registry no longer knew about it (e.g. after process death)
+        registry.reattach(URI_B, 7)
+        assertEquals(InFlightRequestRegistry.Registration.InFlight(7), registry.register(URI_B, 8))
+        assertEquals(1L, registry.stats().accepted)
+    }
+
+    @Test
+    fun testCompleteUnknownRequest() {
+        registry.complete(URI_A, true)
+        assertEquals(InFlightRequestRegistry.Registration.Accepted, registry.register(URI_A, 1))
+    }
+
+    private companion object {
+        const val WINDOW_MS = 5000L
+        const val URI_A = "solana:mvines9iiHiQTysrwkJjGf2gb9Ex9jXJX8ns3qwf2kN?amount=1"
+        const val URI_B = "solana:mvines9iiHiQTysrwkJjGf2gb9Ex9jXJX8ns3qwf2kN?amount=2"
+    }
+}
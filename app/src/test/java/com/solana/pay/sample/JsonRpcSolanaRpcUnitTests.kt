@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import android.os.Build
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertThrows
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.URL
+import java.nio.charset.StandardCharsets
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [Build.VERSION_CODES.S])
+class JsonRpcSolanaRpcUnitTests {
+    private lateinit var server: HttpServer
+    private lateinit var rpc: JsonRpcSolanaRpc
+
+    // The JSON-RPC result returned for every request
+    @Volatile
+    private var result = "null"
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+        server.createContext("/") { exchange ->
+            exchange.requestBody.use { it.readBytes() }
+            val response = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":$result}".toByteArray(StandardCharsets.UTF_8)
+            exchange.sendResponseHeaders(200, response.size.toLong())
+            exchange.responseBody.use { it.write(response) }
+        }
+        server.start()
+        rpc = JsonRpcSolanaRpc(URL("http://127.0.0.1:${server.address.port}/"))
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun testGetLatestBlockhash() {
+        result = "{\"context\":{\"slot\":1},\"value\":{\"blockhash\":\"$BLOCKHASH\",\"lastValidBlockHeight\":3090}}"
+        assertEquals(SolanaRpc.LatestBlockhash(BLOCKHASH, 3090), rpc.getLatestBlockhash())
+    }
+
+    @Test
+    fun testMalformedGetLatestBlockhash() {
+        result = "{\"context\":{\"slot\":1},\"value\":{\"lastValidBlockHeight\":3090}}"
+        assertThrows(IOException::class.java) { rpc.getLatestBlockhash() }
+        result = "{\"context\":{\"slot\":1},\"value\":{\"blockhash\":\"$BLOCKHASH\",\"lastValidBlockHeight\":\"soon\"}}"
+        assertThrows(IOException::class.java) { rpc.getLatestBlockhash() }
+    }
+
+    @Test
+    fun testMalformedGetRecentPrioritizationFees() {
+        result = "[{\"slot\":1,\"prioritizationFee\":100},{\"slot\":2}]"
+        assertThrows(IOException::class.java) { rpc.getRecentPrioritizationFees(emptyList()) }
+        result = "[1,2]"
+        assertThrows(IOException::class.java) { rpc.getRecentPrioritizationFees(emptyList()) }
+    }
+
+    @Test
+    fun testMalformedGetTokenAccountsByOwner() {
+        result = "{\"context\":{\"slot\":1},\"value\":[{\"account\":{}}]}"
+        assertThrows(IOException::class.java) { rpc.getTokenAccountsByOwner(OWNER, MINT) }
+    }
+
+    @Test
+    fun testGetAccountInfo() {
+        result = "{\"context\":{\"slot\":1},\"value\":{\"data\":[\"AQID\",\"base64\"],\"owner\":\"$OWNER\"," +
+                "\"lamports\":1,\"executable\":false,\"rentEpoch\":0}}"
+        val account = rpc.getAccountInfo(MINT)!!
+        assertEquals(OWNER, account.owner)
+        assertArrayEquals(byteArrayOf(1, 2, 3), account.data)
+
+        result = "{\"context\":{\"slot\":1},\"value\":null}"
+        assertNull(rpc.getAccountInfo(MINT))
+    }
+
+    @Test
+    fun testMalformedGetAccountInfo() {
+        result = "{\"context\":{\"slot\":1},\"value\":{\"data\":[\"AQID\",\"base64\"]}}"
+        assertThrows(IOException::class.java) { rpc.getAccountInfo(MINT) }
+        result = "{\"context\":{\"slot\":1},\"value\":{\"data\":\"AQID\",\"owner\":\"$OWNER\"}}"
+        assertThrows(IOException::class.java) { rpc.getAccountInfo(MINT) }
+        result = "{\"context\":{\"slot\":1},\"value\":{\"data\":[\"!not base64!\",\"base64\"],\"owner\":\"$OWNER\"}}"
+        assertThrows(IOException::class.java) { rpc.getAccountInfo(MINT) }
+        result = "[]"
+        assertThrows(IOException::class.java) { rpc.getAccountInfo(MINT) }
+    }
+
+    companion object {
+        private const val BLOCKHASH = "EkSnNWid2cvwEVnVx9aBqawnmiCNiDgp3gUdkDPTKN1N"
+        private const val OWNER = "84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54"
+        private const val MINT = "EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v"
+    }
+}
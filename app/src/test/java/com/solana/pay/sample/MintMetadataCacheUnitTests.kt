@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertThrows
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.concurrent.atomic.AtomicInteger
+
+class MintMetadataCacheUnitTests {
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private class FakeSolanaRpc(private val owner: String = TOKEN_PROGRAM_ID) : UnimplementedSolanaRpc() {
+        val calls = AtomicInteger()
+
+        override fun getAccountInfo(account: String): SolanaRpc.AccountInfo {
+            calls.incrementAndGet()
+            Thread.sleep(10) // give concurrent lookups a chance to overlap
+            val data = ByteArray(82)
+            data[44] = 8 // decimals
+            data[45] = 1 // is_initialized
+            return SolanaRpc.AccountInfo(owner, data)
+        }
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Test
+    fun testBundledMintNeedsNoNetwork() = runBlocking {
+        val cache = MintMetadataCache(UnimplementedSolanaRpc(), scope, null)
+
+        val usdc = cache.get(USDC_MINT)
+
+        assertEquals(MintMetadataCache.MintMetadata(USDC_MINT, 6, "USDC"), usdc)
+    }
+
+    @Test
+    fun testConcurrentLookupsCoalesced() = runBlocking {
+        val rpc = FakeSolanaRpc()
+        val cache = MintMetadataCache(rpc, scope, null)
+
+        val results = List(10) { async { cache.get(OTHER_MINT) } }.awaitAll()
+
+        assertEquals(1, rpc.calls.get())
+        assertEquals(List(10) { MintMetadataCache.MintMetadata(OTHER_MINT, 8, null) }, results)
+        assertNotNull(cache.getIfPresent(OTHER_MINT))
+    }
+
+    @Test
+    fun testDiskCachePersists() = runBlocking {
+        val file = tempFolder.newFile()
+        val rpc = FakeSolanaRpc()
+        MintMetadataCache(rpc, scope, file).get(OTHER_MINT)
+
+        val reloaded = MintMetadataCache(UnimplementedSolanaRpc(), scope, file)
+
+        assertEquals(MintMetadataCache.MintMetadata(OTHER_MINT, 8, null), reloaded.get(OTHER_MINT))
+        assertEquals(MintMetadataCache.MintMetadata(OTHER_MINT, 8, null), reloaded.getIfPresent(OTHER_MINT))
+    }
+
+    @Test
+    fun testConcurrentLookupsWaitForDiskCache() = runBlocking {
+        val file = tempFolder.newFile()
+        val mints = List(200) { "$it$OTHER_MINT" }
+        file.writeText(mints.joinToString("") { "$it\t8\t\n" })
+
+        // Any lookup which misses the disk cache would go to the network, and fail
+        val cache = MintMetadataCache(UnimplementedSolanaRpc(), scope, file)
+        val results = mints.map { async(Dispatchers.IO) { cache.get(it) } }.awaitAll()
+
+        assertEquals(mints.map { MintMetadataCache.MintMetadata(it, 8, null) }, results)
+    }
+
+    @Test
+    fun testDiskCacheSkipsCorruptLines() = runBlocking {
+        val file = tempFolder.newFile()
+        file.writeText("A$OTHER_MINT\t-1\t\nB$OTHER_MINT\t256\t\nC$OTHER_MINT\tx\t\nD$OTHER_MINT\t8\n" +
+                "$OTHER_MINT\t255\tOTHER\n")
+
+        val cache = MintMetadataCache(UnimplementedSolanaRpc(), scope, file)
+
+        assertEquals(MintMetadataCache.MintMetadata(OTHER_MINT, 255, "OTHER"), cache.get(OTHER_MINT))
+        for (prefix in listOf("A", "B", "C", "D")) {
+            assertNull(cache.getIfPresent("$prefix$OTHER_MINT"))
+        }
+    }
+
+    @Test
+    fun testLeastRecentlyUsedEvicted() = runBlocking {
+        val rpc = FakeSolanaRpc()
+        val cache = MintMetadataCache(rpc, scope, null, maxEntries = 2)
+
+        cache.get("A$OTHER_MINT")
+        cache.get("B$OTHER_MINT")
+        cache.get("A$OTHER_MINT")
+        cache.get("C$OTHER_MINT")
+
+        assertEquals(3, rpc.calls.get())
+        assertNotNull(cache.getIfPresent("A$OTHER_MINT"))
+        assertNull(cache.getIfPresent("B$OTHER_MINT"))
+        assertNotNull(cache.getIfPresent("C$OTHER_MINT"))
+    }
+
+    @Test
+    fun testNotAMint() {
+        val cache = MintMetadataCache(FakeSolanaRpc(owner = SYSTEM_PROGRAM_ID), scope, null)
+
+        assertThrows(MintMetadataCache.NotAMintException::class.java) {
+            runBlocking { cache.get(OTHER_MINT) }
+        }
+        assertNull(cache.getIfPresent(OTHER_MINT))
+    }
+
+    companion object {
+        private const val TOKEN_PROGRAM_ID = "TokenkegQfeZyiNwAJbNbGKPFXCWuBvf9Ss623VQ5DA"
+        private const val SYSTEM_PROGRAM_ID = "11111111111111111111111111111111"
+        private const val USDC_MINT = "EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v"
+        private const val OTHER_MINT = "GUdsgKBn9vQ9HyEmZHqJgVv3Ced1tSGNzfrFtMSyHSgm"
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import com.solana.pay.AssociatedTokenAccounts
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class PaymentPrefetcherUnitTests {
+    private class FakeSolanaRpc(private val barrier: CountDownLatch? = null) : UnimplementedSolanaRpc() {
+        val calls = AtomicInteger()
+        val existingAccounts = mutableSetOf(RECIPIENT_USDC_ACCOUNT)
+        var failAccountInfo = false
+        @Volatile var prioritizationFeeAccounts: List<String>? = null
+        @Volatile var accountInfoAccount: String? = null
+
+        // When a barrier is provided, every call blocks until all expected calls are in flight
+        private fun enter() {
+            calls.incrementAndGet()
+            barrier?.let {
+                it.countDown()
+                if (!it.await(5, TimeUnit.SECONDS)) {
+                    throw IOException("RPC calls were not issued concurrently")
+                }
+            }
+        }
+
+        override fun getLatestBlockhash(): SolanaRpc.LatestBlockhash {
+            enter()
+            return SolanaRpc.LatestBlockhash("EkSnNWid2cvwEVnVx9aBqawnmiCNiDgp3gUdkDPTKN1N", 1000)
+        }
+
+        override fun getRecentPrioritizationFees(accounts: List<String>): List<Long> {
+            enter()
+            prioritizationFeeAccounts = accounts
+            return listOf(0, 10, 20, 30, 40)
+        }
+
+        override fun getAccountInfo(account: String): SolanaRpc.AccountInfo? {
+            enter()
+            accountInfoAccount = account
+            if (failAccountInfo) throw IOException("account info unavailable")
+            return if (account in existingAccounts) {
+                SolanaRpc.AccountInfo(AssociatedTokenAccounts.TOKEN_PROGRAM_ID, ByteArray(165))
+            } else null
+        }
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private var now = 0L
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Test
+    fun testPrefetchRunsConcurrently() = runBlocking {
+        val rpc = FakeSolanaRpc(CountDownLatch(3))
+        val prefetcher = PaymentPrefetcher(rpc, scope)
+
+        val prefetch = prefetcher.prefetch(RECIPIENT, USDC_MINT)
+        prefetch.awaitAll()
+
+        assertEquals(1000L, prefetch.latestBlockhash.await().lastValidBlockHeight)
+        assertEquals(30L, prefetch.priorityFee.await())
+        assertTrue(prefetch.recipientTokenAccountExists!!.await())
+    }
+
+    @Test
+    fun testPrefetchChecksRecipientAssociatedTokenAccount() = runBlocking {
+        val rpc = FakeSolanaRpc()
+        val prefetcher = PaymentPrefetcher(rpc, scope)
+
+        val prefetch = prefetcher.prefetch(RECIPIENT, USDC_MINT)
+        assertTrue(prefetch.recipientTokenAccountExists!!.await())
+        prefetch.awaitAll()
+        assertEquals(RECIPIENT_USDC_ACCOUNT, rpc.accountInfoAccount)
+        assertEquals(listOf(RECIPIENT_USDC_ACCOUNT), rpc.prioritizationFeeAccounts)
+
+        // A recipient whose associated token account has not been created
+        rpc.existingAccounts.clear()
+        val missing = prefetcher.prefetch(OTHER_RECIPIENT, USDC_MINT)
+        assertFalse(missing.recipientTokenAccountExists!!.await())
+    }
+
+    @Test
+    fun testPrefetchNativeTransfer() = runBlocking {
+        val rpc = FakeSolanaRpc()
+        val prefetcher = PaymentPrefetcher(rpc, scope)
+
+        val prefetch = prefetcher.prefetch(RECIPIENT, null)
+        prefetch.awaitAll()
+
+        assertNull(prefetch.recipientTokenAccountExists)
+        assertEquals(listOf(RECIPIENT), rpc.prioritizationFeeAccounts)
+        assertEquals(2, rpc.calls.get())
+    }
+
+    @Test
+    fun testPrefetchInvalidAccount() {
+        val prefetcher = PaymentPrefetcher(FakeSolanaRpc(), scope)
+        assertThrows(IllegalArgumentException::class.java) {
+            prefetcher.prefetch(RECIPIENT, "1".repeat(44))
+        }
+    }
+
+    @Test
+    fun testPrefetchSharedAcrossRequests() = runBlocking {
+        val rpc = FakeSolanaRpc()
+        val prefetcher = PaymentPrefetcher(rpc, scope, clock = { now })
+
+        val first = prefetcher.prefetch(RECIPIENT, USDC_MINT)
+        first.awaitAll()
+        val second = prefetcher.prefetch(RECIPIENT, USDC_MINT)
+        second.awaitAll()
+
+        assertSame(first.latestBlockhash, second.latestBlockhash)
+        assertSame(first.recipientTokenAccountExists, second.recipientTokenAccountExists)
+        assertEquals(3, rpc.calls.get())
+    }
+
+    @Test
+    fun testPrefetchExpires() = runBlocking {
+        val rpc = FakeSolanaRpc()
+        val prefetcher = PaymentPrefetcher(rpc, scope, blockhashTtlMs = 1000, clock = { now })
+
+        prefetcher.prefetch(RECIPIENT, null).awaitAll()
+        now += 999
+        prefetcher.prefetch(RECIPIENT, null).awaitAll()
+        assertEquals(2, rpc.calls.get())
+        now += 1
+        prefetcher.prefetch(RECIPIENT, null).awaitAll()
+        assertEquals(3, rpc.calls.get())
+    }
+
+    @Test
+    fun testPrefetchFailureNotCached() = runBlocking {
+        val rpc = FakeSolanaRpc()
+        val prefetcher = PaymentPrefetcher(rpc, scope, clock = { now })
+
+        rpc.failAccountInfo = true
+        val failed = prefetcher.prefetch(RECIPIENT, USDC_MINT)
+        assertThrows(IOException::class.java) { runBlocking { failed.awaitAll() } }
+
+        rpc.failAccountInfo = false
+        val retried = prefetcher.prefetch(RECIPIENT, USDC_MINT)
+        assertTrue(retried.recipientTokenAccountExists!!.await())
+    }
+
+    @Test
+    fun testEstimatePriorityFee() {
+        assertEquals(0L, PaymentPrefetcher.estimatePriorityFee(emptyList()))
+        assertEquals(7L, PaymentPrefetcher.estimatePriorityFee(listOf(7)))
+        assertEquals(300L, PaymentPrefetcher.estimatePriorityFee(listOf(400, 100, 0, 300, 200)))
+    }
+
+    companion object {
+        private const val OTHER_RECIPIENT = "84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54"
+        private const val RECIPIENT = "GUdsgKBn9vQ9HyEmZHqJgVv3Ced1tSGNzfrFtMSyHSgm"
+        private const val USDC_MINT = "EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v"
+        private const val RECIPIENT_USDC_ACCOUNT = "EdiMStJPXBNQYjbNB2ZHdBRiodMFqzxYMBi8pgRh3fGj"
+    }
+}
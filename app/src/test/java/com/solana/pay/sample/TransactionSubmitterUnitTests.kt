@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+class TransactionSubmitterUnitTests {
+    /** A local stand-in for an RPC node, which confirms transactions after a number of polls */
+    private class FakeSolanaRpc(
+        private val pollsUntilConfirmed: Int,
+        private val errors: Map<String, String> = emptyMap(),
+        private val preflightErrors: Set<String> = emptySet(),
+        private val firstSendStarted: CountDownLatch? = null,
+        private val firstSendReleased: CountDownLatch? = null
+    ) : UnimplementedSolanaRpc() {
+        val sends = HashMap<String, Int>()
+        val statusBatchSizes = ArrayList<Int>()
+        var blockHeight = 100L
+        private val polls = HashMap<String, Int>()
+
+        override fun sendTransaction(transaction: ByteArray, skipPreflight: Boolean): String {
+            // When latches are provided, the first (preflighted) send blocks until released
+            if (!skipPreflight && firstSendStarted != null && firstSendReleased != null) {
+                firstSendStarted.countDown()
+                firstSendReleased.await(5, TimeUnit.SECONDS)
+            }
+            synchronized(this) {
+                val signature = TransactionSubmitter.transactionSignature(transaction)
+                if (!skipPreflight && signature in preflightErrors) {
+                    throw SolanaRpc.RpcException(-32002, "Transaction simulation failed")
+                }
+                sends[signature] = (sends[signature] ?: 0) + 1
+                return signature
+            }
+        }
+
+        @Synchronized
+        override fun getSignatureStatuses(signatures: List<String>): List<SolanaRpc.SignatureStatus?> {
+            statusBatchSizes.add(signatures.size)
+            return signatures.map { signature ->
+                if (signature !in sends) return@map null
+                val n = (polls[signature] ?: 0) + 1
+                polls[signature] = n
+                when {
+                    n < pollsUntilConfirmed -> null
+                    signature in errors -> SolanaRpc.SignatureStatus(SolanaRpc.Commitment.PROCESSED, errors[signature])
+                    else -> SolanaRpc.SignatureStatus(SolanaRpc.Commitment.CONFIRMED, null)
+                }
+            }
+        }
+
+        @Synchronized
+        override fun getBlockHeight(): Long = blockHeight++
+    }
+
+    /**
+     * A stand-in for an RPC node on which every transaction lands in the same block in which its
+     * blockhash expires, i.e. between a block height query and the following status query
+     */
+    private class LandsAtExpirySolanaRpc(private val lastValidBlockHeight: Long) : UnimplementedSolanaRpc() {
+        private var blockHeight = lastValidBlockHeight - 2
+        private var landed = false
+
+        @Synchronized
+        override fun sendTransaction(transaction: ByteArray, skipPreflight: Boolean): String =
+            TransactionSubmitter.transactionSignature(transaction)
+
+        @Synchronized
+        override fun getSignatureStatuses(signatures: List<String>): List<SolanaRpc.SignatureStatus?> =
+            signatures.map { if (landed) SolanaRpc.SignatureStatus(SolanaRpc.Commitment.CONFIRMED, null) else null }
+
+        @Synchronized
+        override fun getBlockHeight(): Long {
+            blockHeight++
+            if (blockHeight > lastValidBlockHeight) {
+                landed = true
+            }
+            return blockHeight
+        }
+    }
+
+    private fun createSignedTransaction(random: Random): ByteArray {
+        val transaction = ByteArray(1 + 64 + 32)
+        transaction[0] = 1
+        random.nextBytes(transaction, 1, transaction.size)
+        return transaction
+    }
+
+    @Test
+    fun testSubmitConfirmed() = runBlocking {
+        val rpc = FakeSolanaRpc(pollsUntilConfirmed = 3)
+        val submitter = TransactionSubmitter(rpc, this, pollIntervalMs = 1)
+        val transaction = createSignedTransaction(Random(1))
+
+        val result = submitter.submit(transaction, lastValidBlockHeight = 1000)
+
+        val signature = TransactionSubmitter.transactionSignature(transaction)
+        assertEquals(TransactionSubmitter.Result.Confirmed(signature), result)
+        assertEquals(0, submitter.inFlightCount)
+    }
+
+    @Test
+    fun testSubmitFailedOnChain() = runBlocking {
+        val transaction = createSignedTransaction(Random(2))
+        val signature = TransactionSubmitter.transactionSignature(transaction)
+        val rpc = FakeSolanaRpc(pollsUntilConfirmed = 1, errors = mapOf(signature to "InsufficientFunds"))
+        val submitter = TransactionSubmitter(rpc, this, pollIntervalMs = 1)
+
+        val result = submitter.submit(transaction, lastValidBlockHeight = 1000)
+
+        assertEquals(TransactionSubmitter.Result.Failed(signature, "InsufficientFunds"), result)
+    }
+
+    @Test
+    fun testSubmitFailedPreflight() = runBlocking {
+        val transaction = createSignedTransaction(Random(3))
+        val signature = TransactionSubmitter.transactionSignature(transaction)
+        val rpc = FakeSolanaRpc(pollsUntilConfirmed = 1, preflightErrors = setOf(signature))
+        val submitter = TransactionSubmitter(rpc, this, pollIntervalMs = 1)
+
+        val result = submitter.submit(transaction, lastValidBlockHeight = 1000)
+
+        assertTrue(result is TransactionSubmitter.Result.Failed)
+        assertEquals(signature, result.signature)
+        assertTrue(rpc.statusBatchSizes.isEmpty())
+    }
+
+    @Test
+    fun testSubmitExpiresAndRebroadcasts() = runBlocking {
+        val rpc = FakeSolanaRpc(pollsUntilConfirmed = Int.MAX_VALUE)
+        val submitter = TransactionSubmitter(rpc, this, pollIntervalMs = 1, rebroadcastIntervalMs = 0)
+        val transaction = createSignedTransaction(Random(4))
+
+        val result = submitter.submit(transaction, lastValidBlockHeight = 110)
+
+        val signature = TransactionSubmitter.transactionSignature(transaction)
+        assertEquals(TransactionSubmitter.Result.Expired(signature), result)
+        assertTrue(rpc.sends.getValue(signature) > 1)
+    }
+
+    @Test
+    fun testConfirmedAsBlockhashExpiresIsNotExpired() = runBlocking {
+        val rpc = LandsAtExpirySolanaRpc(lastValidBlockHeight = 110)
+        val submitter = TransactionSubmitter(rpc, this, pollIntervalMs = 1)
+        val transaction = createSignedTransaction(Random(6))
+
+        val result = submitter.submit(transaction, lastValidBlockHeight = 110)
+
+        val signature = TransactionSubmitter.transactionSignature(transaction)
+        assertEquals(TransactionSubmitter.Result.Confirmed(signature), result)
+    }
+
+    @Test
+    fun testSubmitThrowsWhenScopeCancelled() = runBlocking {
+        val rpc = FakeSolanaRpc(pollsUntilConfirmed = Int.MAX_VALUE)
+        val submitterScope = CoroutineScope(Job())
+        val submitter = TransactionSubmitter(rpc, submitterScope, pollIntervalMs = 1)
+        val transaction = createSignedTransaction(Random(7))
+
+        val result = async {
+            try {
+                submitter.submit(transaction, lastValidBlockHeight = Long.MAX_VALUE)
+            } catch (e: IOException) {
+                e
+            }
+        }
+        delay(50)
+        submitterScope.cancel()
+
+        assertTrue(withTimeout(5000) { result.await() } is IOException)
+        assertEquals(0, submitter.inFlightCount)
+    }
+
+    @Test
+    fun testSubmitTrackedWhenCallerCancelledDuringFirstSend() = runBlocking {
+        val firstSendStarted = CountDownLatch(1)
+        val firstSendReleased = CountDownLatch(1)
+        val rpc = FakeSolanaRpc(pollsUntilConfirmed = 3, firstSendStarted = firstSendStarted,
+            firstSendReleased = firstSendReleased)
+        val submitter = TransactionSubmitter(rpc, this, pollIntervalMs = 1)
+        val transaction = createSignedTransaction(Random(8))
+
+        val caller = launch { submitter.submit(transaction, lastValidBlockHeight = 1000) }
+        assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS))
+        caller.cancel()
+        firstSendReleased.countDown()
+        caller.join()
+
+        // The confirmation loop must still resolve (and release) the in-flight entry
+        withTimeout(5000) {
+            while (submitter.inFlightCount > 0) {
+                delay(1)
+            }
+        }
+        assertTrue(rpc.statusBatchSizes.isNotEmpty())
+    }
+
+    @Test
+    fun testManyInFlightShareBatchedStatusRequests() = runBlocking {
+        val rpc = FakeSolanaRpc(pollsUntilConfirmed = 2)
+        val submitter = TransactionSubmitter(rpc, this, pollIntervalMs = 50)
+        val random = Random(5)
+        val transactions = List(300) { createSignedTransaction(random) }
+
+        val results = transactions.map { async { submitter.submit(it, lastValidBlockHeight = 1000) } }.awaitAll()
+
+        assertTrue(results.all { it is TransactionSubmitter.Result.Confirmed })
+        assertTrue(rpc.statusBatchSizes.all { it <= SolanaRpc.MAX_SIGNATURE_STATUSES_PER_REQUEST })
+        assertTrue(rpc.statusBatchSizes.size < transactions.size)
+    }
+
+    @Test
+    fun testTransactionSignatureRequiresSignature() {
+        assertThrows(IllegalArgumentException::class.java) {
+            TransactionSubmitter.transactionSignature(ByteArray(1 + 64 + 32).also { it[0] = 1 })
+        }
+        assertThrows(IllegalArgumentException::class.java) {
+            TransactionSubmitter.transactionSignature(byteArrayOf(0))
+        }
+    }
+}
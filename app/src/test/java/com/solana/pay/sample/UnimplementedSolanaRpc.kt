@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.sample
+
+/** Base class for test [SolanaRpc] stand-ins, which only override the methods under test */
+open class UnimplementedSolanaRpc : SolanaRpc {
+    override fun sendTransaction(transaction: ByteArray, skipPreflight: Boolean): String =
+        throw UnsupportedOperationException()
+    override fun getSignatureStatuses(signatures: List<String>): List<SolanaRpc.SignatureStatus?> =
+        throw UnsupportedOperationException()
+    override fun getBlockHeight(): Long = throw UnsupportedOperationException()
+    override fun getLatestBlockhash(): SolanaRpc.LatestBlockhash = throw UnsupportedOperationException()
+    override fun getRecentPrioritizationFees(accounts: List<String>): List<Long> =
+        throw UnsupportedOperationException()
+    override fun getBalance(account: String): Long = throw UnsupportedOperationException()
+    override fun getTokenAccountsByOwner(owner: String, mint: String): List<String> =
+        throw UnsupportedOperationException()
+    override fun getAccountInfo(account: String): SolanaRpc.AccountInfo? =
+        throw UnsupportedOperationException()
+}
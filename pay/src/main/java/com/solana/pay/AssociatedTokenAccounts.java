@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Derives (and caches) SPL associated token account addresses. This class is thread-safe; each
+ * thread derives addresses with its own {@link ProgramDerivedAddress} instance, and derived
+ * addresses are shared between threads through an LRU cache keyed by (owner, mint, token program).
+ */
+public final class AssociatedTokenAccounts {
+    /** The SPL Token program ID */
+    public static final String TOKEN_PROGRAM_ID = "TokenkegQfeZyiNwAJbNbGKPFXCWuBvf9Ss623VQ5DA";
+
+    /** The SPL Token-2022 program ID */
+    public static final String TOKEN_2022_PROGRAM_ID = "TokenzQdBNbLqP5VEhdkAS6EPFLC1PhnBqCXEpPxuEb";
+
+    /** The SPL Associated Token Account program ID */
+    public static final String ASSOCIATED_TOKEN_ACCOUNT_PROGRAM_ID = "ATokenGPvbdGVxr1b2hvZbsiqW5xWH25efTNsLJA8knL";
+
+    /** Default maximum number of cached addresses */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final byte[] TOKEN_PROGRAM_ID_BYTES = Base58.decodePublicKey(TOKEN_PROGRAM_ID);
+    private static final byte[] ASSOCIATED_TOKEN_ACCOUNT_PROGRAM_ID_BYTES =
+            Base58.decodePublicKey(ASSOCIATED_TOKEN_ACCOUNT_PROGRAM_ID);
+
+    private static final ThreadLocal<Deriver> DERIVER = new ThreadLocal<Deriver>() {
+        @Override
+        protected Deriver initialValue() {
+            return new Deriver();
+        }
+    };
+
+    // Guarded by itself
+    @NonNull
+    private final LinkedHashMap<Key, byte[]> cache;
+
+    /** Construct a new {@link AssociatedTokenAccounts} with a cache of {@link #DEFAULT_CACHE_SIZE} */
+    public AssociatedTokenAccounts() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Construct a new {@link AssociatedTokenAccounts}
+     * @param cacheSize the maximum number of addresses to cache
+     */
+    public AssociatedTokenAccounts(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize must be non-negative");
+        }
+        cache = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Derive the associated token account address for owner and mint, for the SPL Token program
+     * @param owner the base58-encoded owner public key
+     * @param mint the base58-encoded mint public key
+     * @return the base58-encoded associated token account address
+     * @throws IllegalArgumentException if owner or mint are not base58-encoded public keys
+     */
+    @NonNull
+    public String deriveAddress(@NonNull String owner, @NonNull String mint) {
+        return Base58.encode(deriveAddress(Base58.decodePublicKey(owner), Base58.decodePublicKey(mint),
+                TOKEN_PROGRAM_ID_BYTES));
+    }
+
+    /**
+     * Derive the associated token account address for owner and mint
+     * @param owner the 32-byte owner public key
+     * @param mint the 32-byte mint public key
+     * @param tokenProgramId the 32-byte token program ID (e.g. {@link #TOKEN_PROGRAM_ID} or
+     *      {@link #TOKEN_2022_PROGRAM_ID})
+     * @return the 32-byte associated token account address
+     */
+    @NonNull
+    public byte[] deriveAddress(@NonNull byte[] owner, @NonNull byte[] mint,
+                                @NonNull byte[] tokenProgramId) {
+        final byte[] out = new byte[Ed25519.POINT_SIZE];
+        derive(DERIVER.get(), owner, mint, tokenProgramId, out);
+        return out;
+    }
+
+    /**
+     * Derive the associated token account addresses for many owners of the same mint
+     * @param owners the 32-byte owner public keys
+     * @param mint the 32-byte mint public key
+     * @param tokenProgramId the 32-byte token program ID (e.g. {@link #TOKEN_PROGRAM_ID} or
+     *      {@link #TOKEN_2022_PROGRAM_ID})
+     * @param out an array of the same length as owners, each element of which is a 32-byte buffer
+     *      to receive the corresponding associated token account address
+     */
+    public void deriveAddresses(@NonNull byte[][] owners, @NonNull byte[] mint,
+                                @NonNull byte[] tokenProgramId, @NonNull byte[][] out) {
+        if (out.length != owners.length) {
+            throw new IllegalArgumentException("out must be the same length as owners");
+        }
+        final Deriver deriver = DERIVER.get();
+        for (int i = 0; i < owners.length; i++) {
+            derive(deriver, owners[i], mint, tokenProgramId, out[i]);
+        }
+    }
+
+    private void derive(@NonNull Deriver deriver, @NonNull byte[] owner, @NonNull byte[] mint,
+                        @NonNull byte[] tokenProgramId, @NonNull byte[] out) {
+        if (owner.length != Ed25519.POINT_SIZE || mint.length != Ed25519.POINT_SIZE ||
+                tokenProgramId.length != Ed25519.POINT_SIZE || out.length != Ed25519.POINT_SIZE) {
+            throw new IllegalArgumentException("Public keys must be " + Ed25519.POINT_SIZE + " bytes");
+        }
+
+        // Look up with the per-thread probe key, which refers to (rather than copies) the caller's
+        // arrays; only keys which are inserted into the cache own copies of them
+        final Key probe = deriver.probe.set(owner, mint, tokenProgramId);
+        try {
+            synchronized (cache) {
+                final byte[] cached = cache.get(probe);
+                if (cached != null) {
+                    System.arraycopy(cached, 0, out, 0, cached.length);
+                    return;
+                }
+            }
+        } finally {
+            probe.set(null, null, null);
+        }
+
+        deriver.seeds[0] = owner;
+        deriver.seeds[1] = tokenProgramId;
+        deriver.seeds[2] = mint;
+        try {
+            deriver.pda.findProgramAddress(deriver.seeds, ASSOCIATED_TOKEN_ACCOUNT_PROGRAM_ID_BYTES, out);
+        } finally {
+            Arrays.fill(deriver.seeds, null);
+        }
+
+        final Key key = new Key().set(owner.clone(), mint.clone(), tokenProgramId.clone());
+        synchronized (cache) {
+            cache.put(key, out.clone());
+        }
+    }
+
+    /** Per-thread derivation state */
+    private static final class Deriver {
+        final ProgramDerivedAddress pda = new ProgramDerivedAddress();
+        final byte[][] seeds = new byte[3][];
+        final Key probe = new Key();
+    }
+
+    /** A cache key. Keys in the cache are never modified once inserted. */
+    private static final class Key {
+        @Nullable
+        private byte[] owner;
+        @Nullable
+        private byte[] mint;
+        @Nullable
+        private byte[] tokenProgramId;
+        private int hash;
+
+        @NonNull
+        Key set(@Nullable byte[] owner, @Nullable byte[] mint, @Nullable byte[] tokenProgramId) {
+            this.owner = owner;
+            this.mint = mint;
+            this.tokenProgramId = tokenProgramId;
+            hash = (31 * Arrays.hashCode(owner) + Arrays.hashCode(mint)) * 31 + Arrays.hashCode(tokenProgramId);
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return hash == that.hash && Arrays.equals(owner, that.owner) && Arrays.equals(mint, that.mint) &&
+                    Arrays.equals(tokenProgramId, that.tokenProgramId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import androidx.annotation.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Base58 encoding and decoding, using the Bitcoin (and Solana) alphabet
+ */
+public final class Base58 {
+    private static final char[] ALPHABET =
+            "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+
+    private static final byte[] INDEXES = new byte[128];
+    static {
+        Arrays.fill(INDEXES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            INDEXES[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * Encode bytes as a base58 string
+     * @param bytes the bytes to encode
+     * @return the base58-encoded string
+     */
+    @NonNull
+    public static String encode(@NonNull byte[] bytes) {
+        // Max output size is ceil(log2(256) / log2(58) * input_size). In efficient integer math,
+        // a slight overestimate of this is (((input_size * 352) + 255) / 256).
+        final int maxEncodedSize = ((bytes.length * 352) + 255) / 256;
+        final byte[] encoded = new byte[maxEncodedSize];
+
+        int start = 0;
+        while (start < bytes.length && bytes[start] == 0) {
+            encoded[start] = (byte) ALPHABET[0];
+            start++;
+        }
+
+        int pos = maxEncodedSize - 1; // NOTE: pos can go as low as -1
+        for (int i = start; i < bytes.length; i++) {
+            int carry = bytes[i] & 0xff;
+            int j = maxEncodedSize - 1;
+            while (carry != 0 || j > pos) {
+                carry += (encoded[j] & 0xff) * 256;
+                encoded[j] = (byte) (carry % 58);
+                carry /= 58;
+                j--;
+            }
+            pos = j;
+        }
+
+        for (int i = pos + 1; i < maxEncodedSize; i++) {
+            encoded[start++] = (byte) ALPHABET[encoded[i]];
+        }
+
+        return new String(encoded, 0, start, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Decode a base58 string
+     * @param s the base58-encoded string to decode
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if s contains characters outside the base58 alphabet
+     */
+    @NonNull
+    public static byte[] decode(@NonNull String s) {
+        // Max output size is ceil(log2(58) / log2(256) * input_size), where log2(58) / log2(256) is
+        // ~0.7322. In efficient integer math, a slight overestimate of this is
+        // ((input_size * 733) / 1000 + 1).
+        final int maxDecodedSize = (s.length() * 733) / 1000 + 1;
+        final byte[] decoded = new byte[maxDecodedSize];
+
+        int zeros = 0;
+        while (zeros < s.length() && s.charAt(zeros) == ALPHABET[0]) {
+            zeros++;
+        }
+
+        int pos = maxDecodedSize - 1; // NOTE: pos can go as low as -1
+        for (int i = zeros; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            final int digit = (c < 128) ? INDEXES[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid base58 character at index " + i);
+            }
+            int carry = digit;
+            int j = maxDecodedSize - 1;
+            while (carry != 0 || j > pos) {
+                if (j < 0) {
+                    // Unreachable given maxDecodedSize; reject rather than index out of bounds
+                    throw new IllegalArgumentException("Base58 value is too large");
+                }
+                carry += (decoded[j] & 0xff) * 58;
+                decoded[j] = (byte) carry;
+                carry >>>= 8;
+                j--;
+            }
+            pos = j;
+        }
+
+        final byte[] result = new byte[zeros + (maxDecodedSize - pos - 1)];
+        System.arraycopy(decoded, pos + 1, result, zeros, maxDecodedSize - pos - 1);
+        return result;
+    }
+
+    /**
+     * Decode a base58-encoded 32-byte public key
+     * @param s the base58-encoded public key
+     * @return the 32-byte public key
+     * @throws IllegalArgumentException if s is not a base58-encoded 32-byte value
+     */
+    @NonNull
+    public static byte[] decodePublicKey(@NonNull String s) {
+        final byte[] key = decode(s);
+        if (key.length != 32) {
+            throw new IllegalArgumentException("Public key must be 32 bytes");
+        }
+        return key;
+    }
+
+    /** Not constructable */
+    private Base58() {}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Ed25519 curve utilities. Field arithmetic is performed modulo p = 2^255 - 19 on 16 signed 64-bit
+ * limbs of 16 bits each, without data-dependent branches or memory accesses.
+ */
+public final class Ed25519 {
+    /** Size of a compressed Ed25519 point (i.e. a public key), in bytes */
+    public static final int POINT_SIZE = 32;
+
+    private static final int LIMBS = 16;
+
+    private static final long[] ONE = { 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    // The Edwards curve constant d = -121665/121666
+    private static final long[] D = {
+            0x78a3, 0x1359, 0x4dca, 0x75eb, 0xd8ab, 0x4141, 0x0a4d, 0x0070,
+            0xe898, 0x7779, 0x4079, 0x8cc7, 0xfe73, 0x2b6f, 0x6cee, 0x5203 };
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Check whether the compressed point decompresses to a point on the Ed25519 curve. This matches
+     * the semantics of the Solana runtime (i.e. the y-coordinate is reduced modulo p, and the sign
+     * of x is ignored). The check runs in constant time, and does not allocate.
+     * @param point a 32-byte compressed Ed25519 point
+     * @return true if point is on the curve
+     * @throws IllegalArgumentException if point is not 32 bytes
+     */
+    public static boolean isOnCurve(@NonNull byte[] point) {
+        if (point.length != POINT_SIZE) {
+            throw new IllegalArgumentException("point must be " + POINT_SIZE + " bytes");
+        }
+        return isOnCurve(SCRATCH.get(), point);
+    }
+
+    /**
+     * Check whether each of the compressed points decompresses to a point on the Ed25519 curve
+     * @param points the 32-byte compressed Ed25519 points
+     * @param out an array of the same length as points, to receive the result for each point
+     * @return true if all points are on the curve
+     * @throws IllegalArgumentException if any point is not 32 bytes
+     * @see #isOnCurve(byte[])
+     */
+    public static boolean areOnCurve(@NonNull byte[][] points, @NonNull boolean[] out) {
+        if (out.length != points.length) {
+            throw new IllegalArgumentException("out must be the same length as points");
+        }
+        for (byte[] point : points) {
+            if (point.length != POINT_SIZE) {
+                throw new IllegalArgumentException("point must be " + POINT_SIZE + " bytes");
+            }
+        }
+
+        final Scratch s = SCRATCH.get();
+        boolean all = true;
+        for (int i = 0; i < points.length; i++) {
+            out[i] = isOnCurve(s, points[i]);
+            all &= out[i];
+        }
+        return all;
+    }
+
+    private static boolean isOnCurve(@NonNull Scratch s, @NonNull byte[] point) {
+        // A point (x, y) is on the curve iff x^2 = u/v has a solution, where u = y^2 - 1 and
+        // v = d*y^2 + 1. Compute the candidate root x = u*v^3 * (u*v^7)^((p-5)/8); then u/v is
+        // square iff v*x^2 = u or v*x^2 = -u.
+        unpack(s.y, point);
+        square(s.u, s.y, s.product);
+        multiply(s.v, s.u, D, s.product);
+        subtract(s.u, s.u, ONE);
+        add(s.v, s.v, ONE);
+
+        square(s.v2, s.v, s.product);
+        square(s.v4, s.v2, s.product);
+        multiply(s.t, s.v4, s.v2, s.product);
+        multiply(s.t, s.t, s.u, s.product);
+        multiply(s.t, s.t, s.v, s.product); // u*v^7
+        pow2523(s.t, s.t, s.c, s.product);
+        multiply(s.t, s.t, s.u, s.product);
+        multiply(s.t, s.t, s.v, s.product);
+        multiply(s.t, s.t, s.v, s.product);
+        multiply(s.x, s.t, s.v, s.product);
+
+        square(s.t, s.x, s.product);
+        multiply(s.t, s.t, s.v, s.product); // v*x^2
+        pack(s.chk, s.t, s.m, s.c);
+        pack(s.a, s.u, s.m, s.c);
+        final int isU = equal(s.chk, s.a);
+        for (int i = 0; i < LIMBS; i++) {
+            s.c[i] = 0;
+        }
+        subtract(s.t, s.c, s.u);
+        pack(s.a, s.t, s.m, s.c);
+        final int isMinusU = equal(s.chk, s.a);
+        return (isU | isMinusU) != 0;
+    }
+
+    // Returns 1 if a and b are equal, and 0 otherwise, in constant time
+    private static int equal(@NonNull byte[] a, @NonNull byte[] b) {
+        int diff = 0;
+        for (int i = 0; i < POINT_SIZE; i++) {
+            diff |= a[i] ^ b[i];
+        }
+        return ((diff & 0xff) - 1) >>> 31;
+    }
+
+    private static void unpack(@NonNull long[] o, @NonNull byte[] n) {
+        for (int i = 0; i < LIMBS; i++) {
+            o[i] = (n[2 * i] & 0xff) + ((long) (n[2 * i + 1] & 0xff) << 8);
+        }
+        o[15] &= 0x7fff; // ignore the sign bit of x
+    }
+
+    // Fully reduce n modulo p, and encode it as 32 little-endian bytes
+    private static void pack(@NonNull byte[] o, @NonNull long[] n, @NonNull long[] m,
+                             @NonNull long[] t) {
+        System.arraycopy(n, 0, t, 0, LIMBS);
+        carry(t);
+        carry(t);
+        carry(t);
+        for (int j = 0; j < 2; j++) {
+            m[0] = t[0] - 0xffed;
+            for (int i = 1; i < 15; i++) {
+                m[i] = t[i] - 0xffff - ((m[i - 1] >> 16) & 1);
+                m[i - 1] &= 0xffff;
+            }
+            m[15] = t[15] - 0x7fff - ((m[14] >> 16) & 1);
+            final long b = (m[15] >> 16) & 1;
+            m[14] &= 0xffff;
+            select(t, m, 1 - b);
+        }
+        for (int i = 0; i < LIMBS; i++) {
+            o[2 * i] = (byte) t[i];
+            o[2 * i + 1] = (byte) (t[i] >> 8);
+        }
+    }
+
+    // Swap p and q if b is 1; leave them unchanged if b is 0
+    private static void select(@NonNull long[] p, @NonNull long[] q, long b) {
+        final long c = ~(b - 1);
+        for (int i = 0; i < LIMBS; i++) {
+            final long t = c & (p[i] ^ q[i]);
+            p[i] ^= t;
+            q[i] ^= t;
+        }
+    }
+
+    private static void carry(@NonNull long[] o) {
+        for (int i = 0; i < LIMBS; i++) {
+            o[i] += 1L << 16;
+            final long c = o[i] >> 16;
+            if (i < 15) {
+                o[i + 1] += c - 1;
+            } else {
+                o[0] += 38 * (c - 1); // 2^256 = 38 (mod p)
+            }
+            o[i] -= c << 16;
+        }
+    }
+
+    private static void add(@NonNull long[] o, @NonNull long[] a, @NonNull long[] b) {
+        for (int i = 0; i < LIMBS; i++) {
+            o[i] = a[i] + b[i];
+        }
+    }
+
+    private static void subtract(@NonNull long[] o, @NonNull long[] a, @NonNull long[] b) {
+        for (int i = 0; i < LIMBS; i++) {
+            o[i] = a[i] - b[i];
+        }
+    }
+
+    // o = a * b. The product is accumulated in t, so o may alias a or b.
+    private static void multiply(@NonNull long[] o, @NonNull long[] a, @NonNull long[] b,
+                                 @NonNull long[] t) {
+        for (int i = 0; i < 2 * LIMBS - 1; i++) {
+            t[i] = 0;
+        }
+        for (int i = 0; i < LIMBS; i++) {
+            for (int j = 0; j < LIMBS; j++) {
+                t[i + j] += a[i] * b[j];
+            }
+        }
+        // Fold the upper half back in, since 2^256 = 38 (mod p)
+        for (int i = 0; i < LIMBS - 1; i++) {
+            t[i] += 38 * t[i + LIMBS];
+        }
+        System.arraycopy(t, 0, o, 0, LIMBS);
+        carry(o);
+        carry(o);
+    }
+
+    private static void square(@NonNull long[] o, @NonNull long[] a, @NonNull long[] t) {
+        multiply(o, a, a, t);
+    }
+
+    // o = i^((p-5)/8) = i^(2^252 - 3)
+    private static void pow2523(@NonNull long[] o, @NonNull long[] i, @NonNull long[] c,
+                                @NonNull long[] t) {
+        System.arraycopy(i, 0, c, 0, LIMBS);
+        for (int a = 250; a >= 0; a--) {
+            square(c, c, t);
+            if (a != 1) {
+                multiply(c, c, i, t);
+            }
+        }
+        System.arraycopy(c, 0, o, 0, LIMBS);
+    }
+
+    /** Per-thread field element scratch space */
+    private static final class Scratch {
+        final long[] y = new long[LIMBS];
+        final long[] u = new long[LIMBS];
+        final long[] v = new long[LIMBS];
+        final long[] v2 = new long[LIMBS];
+        final long[] v4 = new long[LIMBS];
+        final long[] t = new long[LIMBS];
+        final long[] x = new long[LIMBS];
+        final long[] c = new long[LIMBS];
+        final long[] m = new long[LIMBS];
+        final long[] product = new long[2 * LIMBS - 1];
+        final byte[] chk = new byte[POINT_SIZE];
+        final byte[] a = new byte[POINT_SIZE];
+    }
+
+    /** Not constructable */
+    private Ed25519() {}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Recognizes the System, SPL Token and SPL Memo instructions which make up a typical Solana Pay
+ * transaction, reading their arguments directly from a {@link TransactionDecoder.Instruction} view.
+ */
+public final class InstructionRecognizer {
+    /** The System program ID */
+    public static final String SYSTEM_PROGRAM_ID = "11111111111111111111111111111111";
+
+    /** The SPL Memo program ID */
+    public static final String MEMO_PROGRAM_ID = "MemoSq4gqABAXKb96qnH8TysNcWxMyWCqXgDLGmfcHr";
+
+    /** The legacy (v1) SPL Memo program ID */
+    public static final String MEMO_V1_PROGRAM_ID = "Memo1UhkJRfHyvLMcVucJwxXeuD728EqVDDwQDxFMNo";
+
+    /** Recognized instruction types */
+    public enum Type {
+        /** Not a recognized instruction */
+        UNKNOWN,
+        /**
+         * System program Transfer. Accounts: [0] source, [1] destination. Amount: see
+         * {@link #getLamports(TransactionDecoder.Instruction)}.
+         */
+        SYSTEM_TRANSFER,
+        /**
+         * SPL Token (or Token-2022) Transfer. Accounts: [0] source, [1] destination, [2] owner.
+         * Amount: see {@link #getTokenAmount(TransactionDecoder.Instruction)}.
+         */
+        TOKEN_TRANSFER,
+        /**
+         * SPL Token (or Token-2022) TransferChecked. Accounts: [0] source, [1] mint,
+         * [2] destination, [3] owner. Amount: see
+         * {@link #getTokenAmount(TransactionDecoder.Instruction)} and
+         * {@link #getTokenDecimals(TransactionDecoder.Instruction)}.
+         */
+        TOKEN_TRANSFER_CHECKED,
+        /** SPL Memo. Text: see {@link #getMemo(TransactionDecoder.Instruction)}. */
+        MEMO,
+    }
+
+    private static final byte[] SYSTEM_PROGRAM_ID_BYTES = Base58.decodePublicKey(SYSTEM_PROGRAM_ID);
+    private static final byte[] TOKEN_PROGRAM_ID_BYTES =
+            Base58.decodePublicKey(AssociatedTokenAccounts.TOKEN_PROGRAM_ID);
+    private static final byte[] TOKEN_2022_PROGRAM_ID_BYTES =
+            Base58.decodePublicKey(AssociatedTokenAccounts.TOKEN_2022_PROGRAM_ID);
+    private static final byte[] MEMO_PROGRAM_ID_BYTES = Base58.decodePublicKey(MEMO_PROGRAM_ID);
+    private static final byte[] MEMO_V1_PROGRAM_ID_BYTES = Base58.decodePublicKey(MEMO_V1_PROGRAM_ID);
+
+    private static final int SYSTEM_TRANSFER_DISCRIMINATOR = 2; // u32
+    private static final int SYSTEM_TRANSFER_DATA_LENGTH = 12;
+    private static final int SYSTEM_TRANSFER_NUM_ACCOUNTS = 2;
+
+    private static final int TOKEN_TRANSFER_DISCRIMINATOR = 3; // u8
+    private static final int TOKEN_TRANSFER_DATA_LENGTH = 9;
+    private static final int TOKEN_TRANSFER_NUM_ACCOUNTS = 3;
+
+    private static final int TOKEN_TRANSFER_CHECKED_DISCRIMINATOR = 12; // u8
+    private static final int TOKEN_TRANSFER_CHECKED_DATA_LENGTH = 10;
+    private static final int TOKEN_TRANSFER_CHECKED_NUM_ACCOUNTS = 4;
+
+    /**
+     * Identify an instruction
+     * @param instruction an {@link TransactionDecoder.Instruction} view, pointed at an instruction
+     * @return the {@link Type} of instruction
+     */
+    @NonNull
+    public static Type identify(@NonNull TransactionDecoder.Instruction instruction) {
+        final int dataLength = instruction.getDataLength();
+        final int numAccounts = instruction.getAccountCount();
+        if (instruction.isProgram(SYSTEM_PROGRAM_ID_BYTES)) {
+            if (dataLength == SYSTEM_TRANSFER_DATA_LENGTH &&
+                    numAccounts >= SYSTEM_TRANSFER_NUM_ACCOUNTS &&
+                    instruction.getDataU32(0) == SYSTEM_TRANSFER_DISCRIMINATOR) {
+                return Type.SYSTEM_TRANSFER;
+            }
+        } else if (instruction.isProgram(TOKEN_PROGRAM_ID_BYTES) ||
+                instruction.isProgram(TOKEN_2022_PROGRAM_ID_BYTES)) {
+            if (dataLength == 0) {
+                return Type.UNKNOWN;
+            }
+            final int discriminator = instruction.getDataU8(0);
+            if (discriminator == TOKEN_TRANSFER_DISCRIMINATOR &&
+                    dataLength == TOKEN_TRANSFER_DATA_LENGTH &&
+                    numAccounts >= TOKEN_TRANSFER_NUM_ACCOUNTS) {
+                return Type.TOKEN_TRANSFER;
+            } else if (discriminator == TOKEN_TRANSFER_CHECKED_DISCRIMINATOR &&
+                    dataLength == TOKEN_TRANSFER_CHECKED_DATA_LENGTH &&
+                    numAccounts >= TOKEN_TRANSFER_CHECKED_NUM_ACCOUNTS) {
+                return Type.TOKEN_TRANSFER_CHECKED;
+            }
+        } else if (instruction.isProgram(MEMO_PROGRAM_ID_BYTES) ||
+                instruction.isProgram(MEMO_V1_PROGRAM_ID_BYTES)) {
+            return Type.MEMO;
+        }
+        return Type.UNKNOWN;
+    }
+
+    /**
+     * @param instruction a {@link Type#SYSTEM_TRANSFER} instruction
+     * @return the number of lamports transferred (an unsigned value)
+     * @throws IllegalArgumentException if instruction is not a {@link Type#SYSTEM_TRANSFER}
+     */
+    public static long getLamports(@NonNull TransactionDecoder.Instruction instruction) {
+        checkType(instruction, Type.SYSTEM_TRANSFER);
+        return instruction.getDataU64(4);
+    }
+
+    /**
+     * @param instruction a {@link Type#TOKEN_TRANSFER} or {@link Type#TOKEN_TRANSFER_CHECKED}
+     *      instruction
+     * @return the number of token base units transferred (an unsigned value)
+     * @throws IllegalArgumentException if instruction is not a token transfer
+     */
+    public static long getTokenAmount(@NonNull TransactionDecoder.Instruction instruction) {
+        final Type type = identify(instruction);
+        if (type != Type.TOKEN_TRANSFER && type != Type.TOKEN_TRANSFER_CHECKED) {
+            throw new IllegalArgumentException("Instruction is not a token transfer");
+        }
+        return instruction.getDataU64(1);
+    }
+
+    /**
+     * @param instruction a {@link Type#TOKEN_TRANSFER_CHECKED} instruction
+     * @return the number of decimals of the mint, as asserted by the instruction
+     * @throws IllegalArgumentException if instruction is not a {@link Type#TOKEN_TRANSFER_CHECKED}
+     */
+    public static int getTokenDecimals(@NonNull TransactionDecoder.Instruction instruction) {
+        checkType(instruction, Type.TOKEN_TRANSFER_CHECKED);
+        return instruction.getDataU8(9);
+    }
+
+    /**
+     * @param instruction a {@link Type#MEMO} instruction
+     * @return the memo text
+     * @throws IllegalArgumentException if instruction is not a {@link Type#MEMO}, or if the memo
+     *      is not valid UTF-8 (which the Memo program would reject)
+     */
+    @NonNull
+    public static String getMemo(@NonNull TransactionDecoder.Instruction instruction) {
+        checkType(instruction, Type.MEMO);
+        final ByteBuffer data = instruction.getDecoder().getBuffer().duplicate();
+        data.limit(instruction.getDataOffset() + instruction.getDataLength());
+        data.position(instruction.getDataOffset());
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        try {
+            final CharBuffer memo = decoder.decode(data);
+            return memo.toString();
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("Memo is not valid UTF-8", e);
+        }
+    }
+
+    private static void checkType(@NonNull TransactionDecoder.Instruction instruction, @NonNull Type type) {
+        if (identify(instruction) != type) {
+            throw new IllegalArgumentException("Instruction is not a " + type);
+        }
+    }
+
+    /** Not constructable */
+    private InstructionRecognizer() {}
+}
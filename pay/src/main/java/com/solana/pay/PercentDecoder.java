@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+
+/**
+ * A streaming percent-decoder for URL-encoded UTF-8 strings (such as the Solana Pay
+ * {@link SolanaPayAndroidContract#QUERY_PARAMETER_LABEL},
+ * {@link SolanaPayAndroidContract#QUERY_PARAMETER_MESSAGE} and
+ * {@link SolanaPayAndroidContract#QUERY_PARAMETER_MEMO} query parameters). Decoding is performed
+ * in a single pass into caller-supplied buffers, with strict UTF-8 validation (per RFC 3629) and
+ * enforcement of a maximum decoded length. No intermediate objects are allocated.
+ * <p>Unencoded non-ASCII characters in the input are accepted, and treated as if they had been
+ * percent-encoded as UTF-8.</p>
+ */
+public final class PercentDecoder {
+    /**
+     * Decode the percent-encoded range [start, end) of src, without storing the result. This is
+     * useful to validate an encoded value before any further processing takes place.
+     * @param src the percent-encoded source string
+     * @param start the index of the first character in src to decode
+     * @param end the index after the last character in src to decode
+     * @param plusAsSpace if true, '+' characters are decoded as ' ' (as for query parameters)
+     * @param maxBytes the maximum permitted length of the decoded value, in UTF-8 bytes
+     * @return the length of the decoded value, in UTF-8 bytes
+     * @throws IllegalArgumentException if the range is not valid percent-encoded UTF-8, or if the
+     *      decoded value is longer than maxBytes
+     */
+    public static int validate(@NonNull CharSequence src, int start, int end, boolean plusAsSpace,
+                               int maxBytes) {
+        return decode(src, start, end, plusAsSpace, null, 0, null, maxBytes);
+    }
+
+    /**
+     * Decode the percent-encoded range [start, end) of src as UTF-8 bytes into dst
+     * @param src the percent-encoded source string
+     * @param start the index of the first character in src to decode
+     * @param end the index after the last character in src to decode
+     * @param plusAsSpace if true, '+' characters are decoded as ' ' (as for query parameters)
+     * @param dst the destination buffer for the decoded UTF-8 bytes
+     * @param dstOffset the offset in dst at which to begin writing
+     * @param maxBytes the maximum permitted length of the decoded value, in UTF-8 bytes. The
+     *      remaining space in dst further limits the permitted length.
+     * @return the number of bytes written to dst
+     * @throws IllegalArgumentException if the range is not valid percent-encoded UTF-8, or if the
+     *      decoded value is longer than permitted
+     */
+    public static int decode(@NonNull CharSequence src, int start, int end, boolean plusAsSpace,
+                             @NonNull byte[] dst, int dstOffset, int maxBytes) {
+        if (dstOffset < 0 || dstOffset > dst.length) {
+            throw new IndexOutOfBoundsException("dstOffset out of range");
+        }
+        return decode(src, start, end, plusAsSpace, dst, dstOffset, null,
+                Math.min(maxBytes, dst.length - dstOffset));
+    }
+
+    /**
+     * Decode the percent-encoded range [start, end) of src into dst, starting at the current
+     * position of dst. On return, the position of dst is advanced past the decoded characters.
+     * @param src the percent-encoded source string
+     * @param start the index of the first character in src to decode
+     * @param end the index after the last character in src to decode
+     * @param plusAsSpace if true, '+' characters are decoded as ' ' (as for query parameters)
+     * @param dst the destination buffer for the decoded characters
+     * @param maxBytes the maximum permitted length of the decoded value, in UTF-8 bytes
+     * @return the length of the decoded value, in UTF-8 bytes
+     * @throws IllegalArgumentException if the range is not valid percent-encoded UTF-8, or if the
+     *      decoded value is longer than maxBytes
+     * @throws BufferOverflowException if dst does not have sufficient space remaining. The
+     *      decoded value will never contain more chars than (end - start).
+     */
+    public static int decode(@NonNull CharSequence src, int start, int end, boolean plusAsSpace,
+                             @NonNull CharBuffer dst, int maxBytes) {
+        return decode(src, start, end, plusAsSpace, null, 0, dst, maxBytes);
+    }
+
+    private static int decode(@NonNull CharSequence src, int start, int end, boolean plusAsSpace,
+                              @Nullable byte[] dstBytes, int dstOffset,
+                              @Nullable CharBuffer dstChars, int maxBytes) {
+        if (start < 0 || end > src.length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid range [" + start + ", " + end + ")");
+        }
+
+        int len = 0; // number of decoded bytes
+        int codePoint = 0; // code point of the UTF-8 sequence currently being decoded
+        int remaining = 0; // number of continuation bytes remaining in the current UTF-8 sequence
+        int lower = 0x80; // minimum allowed value of the next continuation byte
+        int upper = 0xBF; // maximum allowed value of the next continuation byte
+
+        int i = start;
+        while (i < end) {
+            final char c = src.charAt(i);
+            final int b;
+            if (c == '%') {
+                if (i + 2 >= end) {
+                    throw new IllegalArgumentException("Truncated percent-encoding at index " + i);
+                }
+                final int hi = hexValue(src.charAt(i + 1));
+                final int lo = hexValue(src.charAt(i + 2));
+                if (hi < 0 || lo < 0) {
+                    throw new IllegalArgumentException("Invalid percent-encoding at index " + i);
+                }
+                b = (hi << 4) | lo;
+                i += 3;
+            } else if (c >= 0x80) {
+                // Unencoded non-ASCII character; process it as its UTF-8 encoding
+                if (remaining != 0) {
+                    throw new IllegalArgumentException("Incomplete UTF-8 sequence at index " + i);
+                }
+                final int cp;
+                if (Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(src.charAt(i + 1))) {
+                    cp = Character.toCodePoint(c, src.charAt(i + 1));
+                    i += 2;
+                } else if (Character.isSurrogate(c)) {
+                    throw new IllegalArgumentException("Unpaired surrogate at index " + i);
+                } else {
+                    cp = c;
+                    i++;
+                }
+                final int n = cp < 0x800 ? 2 : (cp < 0x10000 ? 3 : 4);
+                if (len + n > maxBytes) {
+                    throw new IllegalArgumentException("Decoded value exceeds " + maxBytes + " bytes");
+                }
+                if (dstBytes != null) {
+                    writeUtf8(cp, n, dstBytes, dstOffset + len);
+                }
+                if (dstChars != null) {
+                    putCodePoint(cp, dstChars);
+                }
+                len += n;
+                continue;
+            } else {
+                b = (plusAsSpace && c == '+') ? ' ' : c;
+                i++;
+            }
+
+            if (len == maxBytes) {
+                throw new IllegalArgumentException("Decoded value exceeds " + maxBytes + " bytes");
+            }
+            if (dstBytes != null) {
+                dstBytes[dstOffset + len] = (byte) b;
+            }
+            len++;
+
+            if (remaining == 0) {
+                if (b < 0x80) {
+                    if (dstChars != null) {
+                        dstChars.put((char) b);
+                    }
+                    continue;
+                } else if (b >= 0xC2 && b <= 0xDF) {
+                    codePoint = b & 0x1F;
+                    remaining = 1;
+                    lower = 0x80;
+                    upper = 0xBF;
+                } else if (b >= 0xE0 && b <= 0xEF) {
+                    codePoint = b & 0x0F;
+                    remaining = 2;
+                    // Reject overlong encodings (E0) and UTF-16 surrogates (ED)
+                    lower = (b == 0xE0) ? 0xA0 : 0x80;
+                    upper = (b == 0xED) ? 0x9F : 0xBF;
+                } else if (b >= 0xF0 && b <= 0xF4) {
+                    codePoint = b & 0x07;
+                    remaining = 3;
+                    // Reject overlong encodings (F0) and code points above U+10FFFF (F4)
+                    lower = (b == 0xF0) ? 0x90 : 0x80;
+                    upper = (b == 0xF4) ? 0x8F : 0xBF;
+                } else {
+                    throw new IllegalArgumentException("Invalid UTF-8 lead byte before index " + i);
+                }
+            } else {
+                if (b < lower || b > upper) {
+                    throw new IllegalArgumentException("Invalid UTF-8 continuation byte before index " + i);
+                }
+                codePoint = (codePoint << 6) | (b & 0x3F);
+                lower = 0x80;
+                upper = 0xBF;
+                if (--remaining == 0 && dstChars != null) {
+                    putCodePoint(codePoint, dstChars);
+                }
+            }
+        }
+
+        if (remaining != 0) {
+            throw new IllegalArgumentException("Incomplete UTF-8 sequence at end of input");
+        }
+
+        return len;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private static void writeUtf8(int cp, int n, @NonNull byte[] dst, int offset) {
+        switch (n) {
+            case 2:
+                dst[offset] = (byte) (0xC0 | (cp >> 6));
+                dst[offset + 1] = (byte) (0x80 | (cp & 0x3F));
+                break;
+            case 3:
+                dst[offset] = (byte) (0xE0 | (cp >> 12));
+                dst[offset + 1] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                dst[offset + 2] = (byte) (0x80 | (cp & 0x3F));
+                break;
+            default:
+                dst[offset] = (byte) (0xF0 | (cp >> 18));
+                dst[offset + 1] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                dst[offset + 2] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                dst[offset + 3] = (byte) (0x80 | (cp & 0x3F));
+                break;
+        }
+    }
+
+    private static void putCodePoint(int cp, @NonNull CharBuffer dst) {
+        if (cp < 0x10000) {
+            dst.put((char) cp);
+        } else {
+            dst.put(Character.highSurrogate(cp));
+            dst.put(Character.lowSurrogate(cp));
+        }
+    }
+
+    /** Not constructable */
+    private PercentDecoder() {}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Derives Solana program derived addresses (PDAs). Each instance owns a reusable SHA-256 digest and
+ * scratch buffer, so that repeated derivations do not allocate. Instances are not thread-safe.
+ */
+public final class ProgramDerivedAddress {
+    /** Maximum number of seeds (including the bump seed) for a program derived address */
+    public static final int MAX_SEEDS = 16;
+
+    /** Maximum length of an individual seed, in bytes */
+    public static final int MAX_SEED_LENGTH = 32;
+
+    private static final byte[] PDA_MARKER = "ProgramDerivedAddress".getBytes(StandardCharsets.US_ASCII);
+
+    @NonNull
+    private final MessageDigest sha256;
+
+    @NonNull
+    private final byte[] hash = new byte[Ed25519.POINT_SIZE];
+
+    @NonNull
+    private final byte[] bumpSeed = new byte[1];
+
+    /** Construct a new {@link ProgramDerivedAddress} */
+    public ProgramDerivedAddress() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Create a program derived address from the given seeds, without searching for a bump seed
+     * @param seeds the seeds (including the bump seed, if any)
+     * @param programId the 32-byte program ID
+     * @param out a 32-byte buffer to receive the address
+     * @return true if an address was created; false if the seeds result in an address that lies on
+     *      the Ed25519 curve, and thus is not a valid program derived address
+     * @throws IllegalArgumentException if the seeds exceed the limits for program derived addresses
+     */
+    public boolean createProgramAddress(@NonNull byte[][] seeds, @NonNull byte[] programId,
+                                        @NonNull byte[] out) {
+        validateSeeds(seeds, 0);
+        return create(seeds, null, programId, out);
+    }
+
+    /**
+     * Find the program derived address for the given seeds, searching for the first bump seed
+     * (starting at 255, and descending to 1, as the Solana runtime does) which results in a valid
+     * address
+     * @param seeds the seeds (not including the bump seed)
+     * @param programId the 32-byte program ID
+     * @param out a 32-byte buffer to receive the address
+     * @return the bump seed (in the range [1, 255]) of the address
+     * @throws IllegalArgumentException if the seeds exceed the limits for program derived addresses
+     * @throws IllegalStateException if no valid bump seed exists (this is vanishingly improbable)
+     */
+    public int findProgramAddress(@NonNull byte[][] seeds, @NonNull byte[] programId,
+                                  @NonNull byte[] out) {
+        validateSeeds(seeds, 1);
+        for (int bump = 255; bump >= 1; bump--) {
+            bumpSeed[0] = (byte) bump;
+            if (create(seeds, bumpSeed, programId, out)) {
+                return bump;
+            }
+        }
+        throw new IllegalStateException("Unable to find a valid program derived address");
+    }
+
+    private boolean create(@NonNull byte[][] seeds, @Nullable byte[] bump, @NonNull byte[] programId,
+                           @NonNull byte[] out) {
+        if (programId.length != Ed25519.POINT_SIZE || out.length != Ed25519.POINT_SIZE) {
+            throw new IllegalArgumentException("programId and out must be " + Ed25519.POINT_SIZE + " bytes");
+        }
+
+        sha256.reset();
+        for (byte[] seed : seeds) {
+            sha256.update(seed);
+        }
+        if (bump != null) {
+            sha256.update(bump);
+        }
+        sha256.update(programId);
+        sha256.update(PDA_MARKER);
+        try {
+            sha256.digest(hash, 0, hash.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA-256 digest failed", e);
+        }
+
+        if (Ed25519.isOnCurve(hash)) {
+            return false;
+        }
+        System.arraycopy(hash, 0, out, 0, hash.length);
+        return true;
+    }
+
+    private static void validateSeeds(@NonNull byte[][] seeds, int additionalSeeds) {
+        if (seeds.length + additionalSeeds > MAX_SEEDS) {
+            throw new IllegalArgumentException("At most " + MAX_SEEDS + " seeds are permitted");
+        }
+        for (byte[] seed : seeds) {
+            if (seed.length > MAX_SEED_LENGTH) {
+                throw new IllegalArgumentException("Seeds must be at most " + MAX_SEED_LENGTH + " bytes");
+            }
+        }
+    }
+}
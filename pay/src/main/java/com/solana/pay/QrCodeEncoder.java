@@ -0,0 +1,878 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ *
+ * Portions of this file are derived from the QR Code generator library (Java):
+ *
+ * Copyright (c) Project Nayuki. (MIT License)
+ * https://www.nayuki.io/page/qr-code-generator-library
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * - The above copyright notice and this permission notice shall be included in
+ *   all copies or substantial portions of the Software.
+ * - The Software is provided "as is", without warranty of any kind, express or
+ *   implied, including but not limited to the warranties of merchantability,
+ *   fitness for a particular purpose and noninfringement. In no event shall the
+ *   authors or copyright holders be liable for any claim, damages or other
+ *   liability, whether in an action of contract, tort or otherwise, arising from,
+ *   out of or in connection with the Software or the use or other dealings in the
+ *   Software.
+ */
+
+package com.solana.pay;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Encodes Solana Pay URIs (or any other text) as QR codes (per ISO/IEC 18004), and renders them
+ * into caller-supplied pixel buffers. The smallest QR code version and the most compact encoding
+ * mode which can represent the text are selected automatically. All working buffers are allocated
+ * once, when the encoder is constructed, and reused for every subsequent encode and render.
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class QrCodeEncoder {
+    /** The QR code error correction level */
+    public enum ErrorCorrectionLevel {
+        /** Recovers from ~7% damage */
+        L(1),
+        /** Recovers from ~15% damage */
+        M(0),
+        /** Recovers from ~25% damage */
+        Q(3),
+        /** Recovers from ~30% damage */
+        H(2);
+
+        private final int formatBits;
+
+        ErrorCorrectionLevel(int formatBits) {
+            this.formatBits = formatBits;
+        }
+    }
+
+    /** The QR code data encoding mode */
+    public enum Mode {
+        NUMERIC(0x1, 10, 12, 14),
+        ALPHANUMERIC(0x2, 9, 11, 13),
+        BYTE(0x4, 8, 16, 16);
+
+        private final int modeBits;
+        private final int[] charCountBits;
+
+        Mode(int modeBits, int... charCountBits) {
+            this.modeBits = modeBits;
+            this.charCountBits = charCountBits;
+        }
+
+        private int charCountBits(int version) {
+            return charCountBits[(version + 7) / 17];
+        }
+    }
+
+    /** Minimum QR code version */
+    public static final int MIN_VERSION = 1;
+
+    /** Maximum QR code version */
+    public static final int MAX_VERSION = 40;
+
+    /** Width, in modules, of the light border which must surround a rendered QR code */
+    public static final int QUIET_ZONE = 4;
+
+    private static final int MAX_SIZE = MAX_VERSION * 4 + 17;
+    private static final int MAX_RAW_CODEWORDS = getNumRawDataModules(MAX_VERSION) / 8;
+    private static final int MAX_ECC_CODEWORDS_PER_BLOCK = 30;
+
+    private static final String ALPHANUMERIC_CHARSET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+    // Mask penalty weights
+    private static final int PENALTY_N1 = 3;
+    private static final int PENALTY_N2 = 3;
+    private static final int PENALTY_N3 = 40;
+    private static final int PENALTY_N4 = 10;
+
+    private static final byte[][] ECC_CODEWORDS_PER_BLOCK = {
+            // Version: (index 0 is unused)
+            //   0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40
+            { -1,  7, 10, 15, 20, 26, 18, 20, 24, 30, 18, 20, 24, 26, 30, 22, 24, 28, 30, 28, 28, 28, 28, 30, 30, 26, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 }, // L
+            { -1, 10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26, 26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28 }, // M
+            { -1, 13, 22, 18, 26, 18, 24, 18, 22, 20, 24, 28, 26, 24, 20, 30, 24, 28, 28, 26, 30, 28, 30, 30, 30, 30, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 }, // Q
+            { -1, 17, 28, 22, 16, 22, 28, 26, 26, 24, 28, 24, 28, 22, 24, 24, 30, 28, 28, 26, 28, 30, 24, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 }, // H
+    };
+
+    private static final byte[][] NUM_ERROR_CORRECTION_BLOCKS = {
+            // Version: (index 0 is unused)
+            //   0, 1, 2, 3, 4, 5, 6, 7, 8, 9,10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40
+            { -1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 4,  4,  4,  4,  4,  6,  6,  6,  6,  7,  8,  8,  9,  9, 10, 12, 12, 12, 13, 14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 24, 25 }, // L
+            { -1, 1, 1, 1, 2, 2, 4, 4, 4, 5, 5,  5,  8,  9,  9, 10, 10, 11, 13, 14, 16, 17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49 }, // M
+            { -1, 1, 1, 2, 2, 4, 4, 6, 6, 8, 8,  8, 10, 12, 16, 12, 17, 16, 18, 21, 20, 23, 23, 25, 27, 29, 34, 34, 35, 38, 40, 43, 45, 48, 51, 53, 56, 59, 62, 65, 68 }, // Q
+            { -1, 1, 1, 2, 4, 4, 4, 5, 6, 8, 8, 11, 11, 16, 16, 18, 16, 19, 21, 25, 25, 25, 34, 30, 32, 35, 37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81 }, // H
+    };
+
+    // GF(2^8) arithmetic tables, for the QR code polynomial x^8 + x^4 + x^3 + x^2 + 1
+    private static final int[] GF_EXP = new int[512];
+    private static final int[] GF_LOG = new int[256];
+
+    // Reed-Solomon generator polynomials, indexed by degree. The leading (monic) term is omitted,
+    // and coefficients are stored as logarithms (or -1 for zero), from highest to lowest degree.
+    private static final int[][] RS_GENERATOR_LOGS = new int[MAX_ECC_CODEWORDS_PER_BLOCK + 1][];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            GF_EXP[i] = x;
+            GF_LOG[x] = i;
+            x <<= 1;
+            if (x >= 0x100) {
+                x ^= 0x11d;
+            }
+        }
+        for (int i = 255; i < GF_EXP.length; i++) {
+            GF_EXP[i] = GF_EXP[i - 255];
+        }
+
+        for (int degree = 1; degree <= MAX_ECC_CODEWORDS_PER_BLOCK; degree++) {
+            // Product of (x - r^i) for i in [0, degree), where r = 0x02 is a generator of GF(2^8)
+            final int[] coefficients = new int[degree];
+            coefficients[degree - 1] = 1;
+            int root = 1;
+            for (int i = 0; i < degree; i++) {
+                for (int j = 0; j < degree; j++) {
+                    coefficients[j] = gfMultiply(coefficients[j], root);
+                    if (j + 1 < degree) {
+                        coefficients[j] ^= coefficients[j + 1];
+                    }
+                }
+                root = gfMultiply(root, 0x02);
+            }
+            final int[] logs = new int[degree];
+            for (int i = 0; i < degree; i++) {
+                logs[i] = (coefficients[i] == 0) ? -1 : GF_LOG[coefficients[i]];
+            }
+            RS_GENERATOR_LOGS[degree] = logs;
+        }
+    }
+
+    @NonNull
+    private final ErrorCorrectionLevel errorCorrectionLevel;
+
+    // Reusable working buffers
+    private final byte[] textBytes = new byte[MAX_RAW_CODEWORDS];
+    private final byte[] dataCodewords = new byte[MAX_RAW_CODEWORDS];
+    private final byte[] eccCodewords = new byte[MAX_RAW_CODEWORDS];
+    private final byte[] allCodewords = new byte[MAX_RAW_CODEWORDS];
+    private final boolean[] modules = new boolean[MAX_SIZE * MAX_SIZE];
+    private final boolean[] isFunction = new boolean[MAX_SIZE * MAX_SIZE];
+    private final int[] alignmentPatternPositions = new int[MAX_VERSION / 7 + 2];
+    private final int[] runHistory = new int[7];
+
+    private int version;
+    private int size;
+    private int mask = -1;
+    private Mode mode;
+
+    /**
+     * Construct a new {@link QrCodeEncoder}
+     * @param errorCorrectionLevel the error correction level for all QR codes created by this
+     *      encoder
+     */
+    public QrCodeEncoder(@NonNull ErrorCorrectionLevel errorCorrectionLevel) {
+        this.errorCorrectionLevel = errorCorrectionLevel;
+    }
+
+    /**
+     * Encode a Solana Pay URI as a QR code, replacing any previously encoded QR code
+     * @param solanaPayUri the {@link SolanaPayURI} to encode
+     * @throws IllegalArgumentException if the URI is too long to encode as a QR code
+     */
+    public void encode(@NonNull SolanaPayURI solanaPayUri) {
+        encode(solanaPayUri.uri.toString());
+    }
+
+    /**
+     * Encode text as a QR code, replacing any previously encoded QR code
+     * @param text the text to encode
+     * @throws IllegalArgumentException if text is too long to encode as a QR code
+     */
+    public void encode(@NonNull CharSequence text) {
+        // Select the most compact mode which can represent the text
+        final Mode mode;
+        final int payloadBits;
+        final int numChars;
+        if (isNumeric(text)) {
+            mode = Mode.NUMERIC;
+            numChars = text.length();
+            payloadBits = numChars * 3 + (numChars + 2) / 3;
+        } else if (isAlphanumeric(text)) {
+            mode = Mode.ALPHANUMERIC;
+            numChars = text.length();
+            payloadBits = numChars * 5 + (numChars + 1) / 2;
+        } else {
+            mode = Mode.BYTE;
+            numChars = encodeUtf8(text);
+            payloadBits = numChars * 8;
+        }
+
+        // Select the smallest version with sufficient capacity
+        int version = MIN_VERSION;
+        for (; ; version++) {
+            if (version > MAX_VERSION) {
+                throw new IllegalArgumentException("Text is too long to encode as a QR code");
+            }
+            final int charCountBits = mode.charCountBits(version);
+            if (numChars < (1 << charCountBits) &&
+                    4 + charCountBits + payloadBits <= getNumDataCodewords(version, errorCorrectionLevel) * 8) {
+                break;
+            }
+        }
+
+        this.mode = mode;
+        this.version = version;
+        this.size = version * 4 + 17;
+
+        final int numDataCodewords = getNumDataCodewords(version, errorCorrectionLevel);
+        writeDataCodewords(text, mode, numChars, numDataCodewords);
+        final int numCodewords = addEccAndInterleave(numDataCodewords);
+
+        Arrays.fill(modules, 0, size * size, false);
+        Arrays.fill(isFunction, 0, size * size, false);
+        drawFunctionPatterns();
+        drawCodewords(numCodewords);
+        mask = chooseMask();
+        applyMask(mask);
+        drawFormatBits(mask);
+    }
+
+    /** @return the version of the most recently encoded QR code */
+    public int getVersion() {
+        checkEncoded();
+        return version;
+    }
+
+    /** @return the size, in modules, of each side of the most recently encoded QR code */
+    public int getSize() {
+        checkEncoded();
+        return size;
+    }
+
+    /** @return the mask pattern (in the range [0, 7]) of the most recently encoded QR code */
+    public int getMask() {
+        checkEncoded();
+        return mask;
+    }
+
+    /** @return the data encoding mode of the most recently encoded QR code */
+    @NonNull
+    public Mode getMode() {
+        checkEncoded();
+        return mode;
+    }
+
+    /** @return the error correction level of QR codes created by this encoder */
+    @NonNull
+    public ErrorCorrectionLevel getErrorCorrectionLevel() {
+        return errorCorrectionLevel;
+    }
+
+    /**
+     * Get the color of a module of the most recently encoded QR code
+     * @param x the module column, in the range [0, {@link #getSize()})
+     * @param y the module row, in the range [0, {@link #getSize()})
+     * @return true if the module is dark, false if it is light
+     */
+    public boolean isDark(int x, int y) {
+        checkEncoded();
+        if (x < 0 || x >= size || y < 0 || y >= size) {
+            throw new IndexOutOfBoundsException("Module (" + x + ", " + y + ") is out of range");
+        }
+        return modules[y * size + x];
+    }
+
+    /**
+     * @return the minimum width and height, in pixels, required to render the most recently encoded
+     *      QR code (including its {@link #QUIET_ZONE})
+     */
+    public int getMinimumRenderSize() {
+        checkEncoded();
+        return size + 2 * QUIET_ZONE;
+    }
+
+    /**
+     * Render the most recently encoded QR code into a pixel buffer. The QR code (including its
+     * {@link #QUIET_ZONE}) is scaled by the largest integer factor which fits in the buffer, and
+     * centered within it.
+     * @param pixels the destination pixel buffer, in row-major order
+     * @param width the width of the pixel buffer
+     * @param height the height of the pixel buffer
+     * @param darkColor the pixel value for dark modules
+     * @param lightColor the pixel value for light modules and the background
+     * @throws IllegalArgumentException if pixels is too small for width and height, or if width or
+     *      height is smaller than {@link #getMinimumRenderSize()}
+     */
+    public void render(@NonNull int[] pixels, int width, int height, int darkColor, int lightColor) {
+        checkEncoded();
+        final int minSize = getMinimumRenderSize();
+        if (width < minSize || height < minSize) {
+            throw new IllegalArgumentException("width and height must be at least " + minSize);
+        }
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("pixels must contain at least width * height elements");
+        }
+
+        final int scale = Math.min(width, height) / minSize;
+        final int left = (width - size * scale) / 2;
+        final int top = (height - size * scale) / 2;
+
+        Arrays.fill(pixels, 0, width * height, lightColor);
+        for (int y = 0; y < size; y++) {
+            // Render the first pixel row of this module row, then replicate it
+            final int rowStart = (top + y * scale) * width;
+            for (int x = 0; x < size; x++) {
+                if (modules[y * size + x]) {
+                    final int start = rowStart + left + x * scale;
+                    Arrays.fill(pixels, start, start + scale, darkColor);
+                }
+            }
+            for (int i = 1; i < scale; i++) {
+                System.arraycopy(pixels, rowStart + left, pixels, rowStart + i * width + left, size * scale);
+            }
+        }
+    }
+
+    /**
+     * Render the most recently encoded QR code into a mutable {@link Bitmap}, reusing pixels as
+     * scratch space
+     * @param bitmap the destination {@link Bitmap}, which must be mutable
+     * @param pixels a scratch buffer with at least (bitmap width * bitmap height) elements
+     * @param darkColor the color for dark modules
+     * @param lightColor the color for light modules and the background
+     * @see #render(int[], int, int, int, int)
+     */
+    public void render(@NonNull Bitmap bitmap, @NonNull int[] pixels, int darkColor, int lightColor) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        render(pixels, width, height, darkColor, lightColor);
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+
+    private void checkEncoded() {
+        if (mask == -1) {
+            throw new IllegalStateException("No QR code has been encoded");
+        }
+    }
+
+    // =============================================================================================
+    // Data encoding
+    // =============================================================================================
+
+    private static boolean isNumeric(@NonNull CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAlphanumeric(@NonNull CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (ALPHANUMERIC_CHARSET.indexOf(text.charAt(i)) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Encode text as UTF-8 into textBytes, returning the number of bytes
+    private int encodeUtf8(@NonNull CharSequence text) {
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < text.length() &&
+                    Character.isLowSurrogate(text.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, text.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                c = '?';
+            }
+            final int len = (c < 0x80) ? 1 : (c < 0x800) ? 2 : (c < 0x10000) ? 3 : 4;
+            if (n + len > textBytes.length) {
+                throw new IllegalArgumentException("Text is too long to encode as a QR code");
+            }
+            switch (len) {
+                case 1:
+                    textBytes[n++] = (byte) c;
+                    break;
+                case 2:
+                    textBytes[n++] = (byte) (0xc0 | (c >> 6));
+                    textBytes[n++] = (byte) (0x80 | (c & 0x3f));
+                    break;
+                case 3:
+                    textBytes[n++] = (byte) (0xe0 | (c >> 12));
+                    textBytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    textBytes[n++] = (byte) (0x80 | (c & 0x3f));
+                    break;
+                default:
+                    textBytes[n++] = (byte) (0xf0 | (c >> 18));
+                    textBytes[n++] = (byte) (0x80 | ((c >> 12) & 0x3f));
+                    textBytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    textBytes[n++] = (byte) (0x80 | (c & 0x3f));
+                    break;
+            }
+        }
+        return n;
+    }
+
+    private void writeDataCodewords(@NonNull CharSequence text, @NonNull Mode mode, int numChars,
+                                    int numDataCodewords) {
+        Arrays.fill(dataCodewords, 0, numDataCodewords, (byte) 0);
+        int bitLength = 0;
+        bitLength = appendBits(mode.modeBits, 4, bitLength);
+        bitLength = appendBits(numChars, mode.charCountBits(version), bitLength);
+
+        switch (mode) {
+            case NUMERIC:
+                for (int i = 0; i < numChars; ) {
+                    final int n = Math.min(numChars - i, 3);
+                    int value = 0;
+                    for (int j = 0; j < n; j++) {
+                        value = value * 10 + (text.charAt(i + j) - '0');
+                    }
+                    bitLength = appendBits(value, n * 3 + 1, bitLength);
+                    i += n;
+                }
+                break;
+            case ALPHANUMERIC:
+                for (int i = 0; i < numChars; ) {
+                    if (i + 1 < numChars) {
+                        final int value = ALPHANUMERIC_CHARSET.indexOf(text.charAt(i)) * 45 +
+                                ALPHANUMERIC_CHARSET.indexOf(text.charAt(i + 1));
+                        bitLength = appendBits(value, 11, bitLength);
+                        i += 2;
+                    } else {
+                        bitLength = appendBits(ALPHANUMERIC_CHARSET.indexOf(text.charAt(i)), 6, bitLength);
+                        i++;
+                    }
+                }
+                break;
+            case BYTE:
+                for (int i = 0; i < numChars; i++) {
+                    bitLength = appendBits(textBytes[i] & 0xff, 8, bitLength);
+                }
+                break;
+        }
+
+        // Terminator (up to 4 bits), then pad to a byte boundary
+        final int capacityBits = numDataCodewords * 8;
+        bitLength += Math.min(4, capacityBits - bitLength);
+        bitLength = (bitLength + 7) & ~7;
+
+        // Fill the remaining capacity with alternating pad bytes
+        for (int i = bitLength / 8, pad = 0xec; i < numDataCodewords; i++, pad ^= 0xec ^ 0x11) {
+            dataCodewords[i] = (byte) pad;
+        }
+    }
+
+    private int appendBits(int value, int numBits, int bitLength) {
+        for (int i = numBits - 1; i >= 0; i--, bitLength++) {
+            if (((value >>> i) & 1) != 0) {
+                dataCodewords[bitLength >>> 3] |= (byte) (0x80 >>> (bitLength & 7));
+            }
+        }
+        return bitLength;
+    }
+
+    // Split dataCodewords into blocks, compute the ECC for each block, and interleave the data
+    // and ECC codewords into allCodewords. Returns the total number of codewords.
+    private int addEccAndInterleave(int numDataCodewords) {
+        final int ecl = errorCorrectionLevel.ordinal();
+        final int numBlocks = NUM_ERROR_CORRECTION_BLOCKS[ecl][version];
+        final int blockEccLength = ECC_CODEWORDS_PER_BLOCK[ecl][version];
+        final int rawCodewords = getNumRawDataModules(version) / 8;
+        final int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+        final int shortBlockDataLength = rawCodewords / numBlocks - blockEccLength;
+
+        for (int i = 0, dataOffset = 0; i < numBlocks; i++) {
+            final int dataLength = shortBlockDataLength + (i < numShortBlocks ? 0 : 1);
+            reedSolomonRemainder(dataCodewords, dataOffset, dataLength, blockEccLength,
+                    eccCodewords, i * blockEccLength);
+            dataOffset += dataLength;
+        }
+
+        int n = 0;
+        for (int j = 0; j <= shortBlockDataLength; j++) {
+            for (int i = 0; i < numBlocks; i++) {
+                if (j == shortBlockDataLength && i < numShortBlocks) {
+                    continue; // short blocks have no codeword at this position
+                }
+                final int blockOffset = i * shortBlockDataLength + Math.max(0, i - numShortBlocks);
+                allCodewords[n++] = dataCodewords[blockOffset + j];
+            }
+        }
+        for (int j = 0; j < blockEccLength; j++) {
+            for (int i = 0; i < numBlocks; i++) {
+                allCodewords[n++] = eccCodewords[i * blockEccLength + j];
+            }
+        }
+        if (n != rawCodewords || numDataCodewords != numBlocks * shortBlockDataLength + numBlocks - numShortBlocks) {
+            throw new AssertionError("Codeword count mismatch");
+        }
+        return n;
+    }
+
+    /**
+     * Compute the Reed-Solomon error correction codewords for a block of data codewords
+     * @param data the buffer containing the data codewords
+     * @param dataOffset the offset of the first data codeword in data
+     * @param dataLength the number of data codewords
+     * @param degree the number of error correction codewords to compute
+     * @param out the buffer to receive the error correction codewords
+     * @param outOffset the offset in out at which to write the error correction codewords
+     */
+    static void reedSolomonRemainder(@NonNull byte[] data, int dataOffset, int dataLength,
+                                     int degree, @NonNull byte[] out, int outOffset) {
+        final int[] generator = RS_GENERATOR_LOGS[degree];
+        Arrays.fill(out, outOffset, outOffset + degree, (byte) 0);
+        for (int i = 0; i < dataLength; i++) {
+            final int factor = (data[dataOffset + i] ^ out[outOffset]) & 0xff;
+            System.arraycopy(out, outOffset + 1, out, outOffset, degree - 1);
+            out[outOffset + degree - 1] = 0;
+            if (factor != 0) {
+                final int factorLog = GF_LOG[factor];
+                for (int j = 0; j < degree; j++) {
+                    if (generator[j] >= 0) {
+                        out[outOffset + j] ^= (byte) GF_EXP[generator[j] + factorLog];
+                    }
+                }
+            }
+        }
+    }
+
+    private static int gfMultiply(int x, int y) {
+        if (x == 0 || y == 0) {
+            return 0;
+        }
+        return GF_EXP[GF_LOG[x] + GF_LOG[y]];
+    }
+
+    private static int getNumRawDataModules(int version) {
+        int result = (16 * version + 128) * version + 64;
+        if (version >= 2) {
+            final int numAlign = version / 7 + 2;
+            result -= (25 * numAlign - 10) * numAlign - 55;
+            if (version >= 7) {
+                result -= 36;
+            }
+        }
+        return result;
+    }
+
+    private static int getNumDataCodewords(int version, @NonNull ErrorCorrectionLevel ecl) {
+        return getNumRawDataModules(version) / 8
+                - ECC_CODEWORDS_PER_BLOCK[ecl.ordinal()][version]
+                * NUM_ERROR_CORRECTION_BLOCKS[ecl.ordinal()][version];
+    }
+
+    // =============================================================================================
+    // Module placement
+    // =============================================================================================
+
+    private void setFunctionModule(int x, int y, boolean dark) {
+        modules[y * size + x] = dark;
+        isFunction[y * size + x] = true;
+    }
+
+    private void drawFunctionPatterns() {
+        // Timing patterns
+        for (int i = 0; i < size; i++) {
+            setFunctionModule(6, i, i % 2 == 0);
+            setFunctionModule(i, 6, i % 2 == 0);
+        }
+
+        // Finder patterns (and separators)
+        drawFinderPattern(3, 3);
+        drawFinderPattern(size - 4, 3);
+        drawFinderPattern(3, size - 4);
+
+        // Alignment patterns, except where they would overlap the finder patterns
+        final int numAlign = getAlignmentPatternPositions();
+        for (int i = 0; i < numAlign; i++) {
+            for (int j = 0; j < numAlign; j++) {
+                if (!(i == 0 && j == 0 || i == 0 && j == numAlign - 1 || i == numAlign - 1 && j == 0)) {
+                    drawAlignmentPattern(alignmentPatternPositions[i], alignmentPatternPositions[j]);
+                }
+            }
+        }
+
+        // Reserve the format bits (drawn for real once the mask is chosen), and draw the version
+        drawFormatBits(0);
+        drawVersion();
+    }
+
+    private void drawFinderPattern(int x, int y) {
+        for (int dy = -4; dy <= 4; dy++) {
+            for (int dx = -4; dx <= 4; dx++) {
+                final int dist = Math.max(Math.abs(dx), Math.abs(dy));
+                final int xx = x + dx;
+                final int yy = y + dy;
+                if (xx >= 0 && xx < size && yy >= 0 && yy < size) {
+                    setFunctionModule(xx, yy, dist != 2 && dist != 4);
+                }
+            }
+        }
+    }
+
+    private void drawAlignmentPattern(int x, int y) {
+        for (int dy = -2; dy <= 2; dy++) {
+            for (int dx = -2; dx <= 2; dx++) {
+                setFunctionModule(x + dx, y + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+            }
+        }
+    }
+
+    // Fill alignmentPatternPositions, returning the number of positions
+    private int getAlignmentPatternPositions() {
+        if (version == 1) {
+            return 0;
+        }
+        final int numAlign = version / 7 + 2;
+        final int step = (version * 8 + numAlign * 3 + 5) / (numAlign * 4 - 4) * 2;
+        alignmentPatternPositions[0] = 6;
+        for (int i = numAlign - 1, pos = size - 7; i >= 1; i--, pos -= step) {
+            alignmentPatternPositions[i] = pos;
+        }
+        return numAlign;
+    }
+
+    /**
+     * Compute the 15-bit format information for an error correction level and mask
+     * @return the format bits, including BCH error correction and the format mask
+     */
+    static int getFormatBits(@NonNull ErrorCorrectionLevel ecl, int mask) {
+        final int data = ecl.formatBits << 3 | mask;
+        int rem = data;
+        for (int i = 0; i < 10; i++) {
+            rem = (rem << 1) ^ ((rem >>> 9) * 0x537);
+        }
+        return (data << 10 | rem) ^ 0x5412;
+    }
+
+    /**
+     * Compute the 18-bit version information for a version
+     * @return the version bits, including BCH error correction
+     */
+    static int getVersionBits(int version) {
+        int rem = version;
+        for (int i = 0; i < 12; i++) {
+            rem = (rem << 1) ^ ((rem >>> 11) * 0x1f25);
+        }
+        return version << 12 | rem;
+    }
+
+    private void drawFormatBits(int mask) {
+        final int bits = getFormatBits(errorCorrectionLevel, mask);
+
+        // First copy, around the top-left finder pattern
+        for (int i = 0; i <= 5; i++) {
+            setFunctionModule(8, i, getBit(bits, i));
+        }
+        setFunctionModule(8, 7, getBit(bits, 6));
+        setFunctionModule(8, 8, getBit(bits, 7));
+        setFunctionModule(7, 8, getBit(bits, 8));
+        for (int i = 9; i < 15; i++) {
+            setFunctionModule(14 - i, 8, getBit(bits, i));
+        }
+
+        // Second copy, split between the top-right and bottom-left finder patterns
+        for (int i = 0; i < 8; i++) {
+            setFunctionModule(size - 1 - i, 8, getBit(bits, i));
+        }
+        for (int i = 8; i < 15; i++) {
+            setFunctionModule(8, size - 15 + i, getBit(bits, i));
+        }
+        setFunctionModule(8, size - 8, true); // always dark
+    }
+
+    private void drawVersion() {
+        if (version < 7) {
+            return;
+        }
+        final int bits = getVersionBits(version);
+        for (int i = 0; i < 18; i++) {
+            final boolean bit = getBit(bits, i);
+            final int a = size - 11 + i % 3;
+            final int b = i / 3;
+            setFunctionModule(a, b, bit);
+            setFunctionModule(b, a, bit);
+        }
+    }
+
+    private void drawCodewords(int numCodewords) {
+        final int numBits = numCodewords * 8;
+        int i = 0;
+        // Zig-zag through pairs of columns, right to left, alternating upwards and downwards
+        for (int right = size - 1; right >= 1; right -= 2) {
+            if (right == 6) {
+                right = 5; // skip the vertical timing pattern
+            }
+            final boolean upward = ((right + 1) & 2) == 0;
+            for (int vert = 0; vert < size; vert++) {
+                final int y = upward ? size - 1 - vert : vert;
+                for (int j = 0; j < 2; j++) {
+                    final int x = right - j;
+                    final int index = y * size + x;
+                    if (!isFunction[index] && i < numBits) {
+                        modules[index] = getBit(allCodewords[i >>> 3], 7 - (i & 7));
+                        i++;
+                    }
+                    // Any remainder bits are left light
+                }
+            }
+        }
+    }
+
+    // =============================================================================================
+    // Masking
+    // =============================================================================================
+
+    // Applying a mask is an involution; applying the same mask again removes it
+    private void applyMask(int mask) {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final boolean invert;
+                switch (mask) {
+                    case 0: invert = (x + y) % 2 == 0; break;
+                    case 1: invert = y % 2 == 0; break;
+                    case 2: invert = x % 3 == 0; break;
+                    case 3: invert = (x + y) % 3 == 0; break;
+                    case 4: invert = (x / 3 + y / 2) % 2 == 0; break;
+                    case 5: invert = x * y % 2 + x * y % 3 == 0; break;
+                    case 6: invert = (x * y % 2 + x * y % 3) % 2 == 0; break;
+                    case 7: invert = ((x + y) % 2 + x * y % 3) % 2 == 0; break;
+                    default: throw new IllegalArgumentException("Invalid mask " + mask);
+                }
+                final int index = y * size + x;
+                modules[index] ^= invert & !isFunction[index];
+            }
+        }
+    }
+
+    // Evaluate each mask in place (applying, scoring, then removing it), and return the mask with
+    // the lowest penalty score
+    private int chooseMask() {
+        int bestMask = 0;
+        int minPenalty = Integer.MAX_VALUE;
+        for (int i = 0; i < 8; i++) {
+            applyMask(i);
+            drawFormatBits(i);
+            final int penalty = getPenaltyScore();
+            if (penalty < minPenalty) {
+                bestMask = i;
+                minPenalty = penalty;
+            }
+            applyMask(i);
+        }
+        return bestMask;
+    }
+
+    private int getPenaltyScore() {
+        int result = 0;
+
+        // Adjacent modules in a row having the same color, and finder-like patterns
+        for (int y = 0; y < size; y++) {
+            result += getLinePenaltyScore(y * size, 1);
+        }
+
+        // Adjacent modules in a column having the same color, and finder-like patterns
+        for (int x = 0; x < size; x++) {
+            result += getLinePenaltyScore(x, size);
+        }
+
+        // 2x2 blocks of modules having the same color
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                final int index = y * size + x;
+                final boolean color = modules[index];
+                if (color == modules[index + 1] && color == modules[index + size] &&
+                        color == modules[index + size + 1]) {
+                    result += PENALTY_N2;
+                }
+            }
+        }
+
+        // Balance of dark and light modules
+        int dark = 0;
+        for (int i = 0; i < size * size; i++) {
+            if (modules[i]) {
+                dark++;
+            }
+        }
+        final int total = size * size;
+        // Compute the smallest integer k >= 0 such that (45-5k)% <= dark/total <= (55+5k)%
+        final int k = (Math.abs(dark * 20 - total * 10) + total - 1) / total - 1;
+        result += k * PENALTY_N4;
+
+        return result;
+    }
+
+    private int getLinePenaltyScore(int start, int stride) {
+        int result = 0;
+        boolean runColor = false;
+        int runLength = 0;
+        Arrays.fill(runHistory, 0);
+        for (int i = 0, index = start; i < size; i++, index += stride) {
+            if (modules[index] == runColor) {
+                runLength++;
+                if (runLength == 5) {
+                    result += PENALTY_N1;
+                } else if (runLength > 5) {
+                    result++;
+                }
+            } else {
+                addRunToHistory(runLength);
+                if (!runColor) {
+                    result += countFinderLikePatterns() * PENALTY_N3;
+                }
+                runColor = modules[index];
+                runLength = 1;
+            }
+        }
+        // Terminate the line with a light run (the quiet zone)
+        if (runColor) {
+            addRunToHistory(runLength);
+            runLength = 0;
+        }
+        runLength += size;
+        addRunToHistory(runLength);
+        result += countFinderLikePatterns() * PENALTY_N3;
+        return result;
+    }
+
+    private void addRunToHistory(int runLength) {
+        if (runHistory[0] == 0) {
+            runLength += size; // add the light border to the initial run
+        }
+        System.arraycopy(runHistory, 0, runHistory, 1, runHistory.length - 1);
+        runHistory[0] = runLength;
+    }
+
+    // Count the 1:1:3:1:1 finder-like patterns (with a 4-module light run on either side) which end
+    // at the most recent run
+    private int countFinderLikePatterns() {
+        final int n = runHistory[1];
+        final boolean core = n > 0 && runHistory[2] == n && runHistory[3] == n * 3 &&
+                runHistory[4] == n && runHistory[5] == n;
+        return (core && runHistory[0] >= n * 4 && runHistory[6] >= n ? 1 : 0)
+                + (core && runHistory[6] >= n * 4 && runHistory[0] >= n ? 1 : 0);
+    }
+
+    private static boolean getBit(int x, int i) {
+        return ((x >>> i) & 1) != 0;
+    }
+}
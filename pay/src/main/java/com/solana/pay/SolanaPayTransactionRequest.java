@@ -8,6 +8,7 @@ import android.net.Uri;
 
 import androidx.annotation.NonNull;
 
+import java.nio.CharBuffer;
 import java.util.Objects;
 
 /**
@@ -35,12 +36,11 @@ public class SolanaPayTransactionRequest extends SolanaPayURI {
 
         // Link URI is everything from the start of the scheme-specific part through the first '?'
         final int querySeparatorIndex = ssp.indexOf('?');
-        final Uri link;
-        if (querySeparatorIndex == -1) {
-            link = Uri.parse(Uri.decode(ssp));
-        } else {
-            link = Uri.parse(Uri.decode(ssp.substring(0, querySeparatorIndex)));
-        }
+        final int linkEnd = (querySeparatorIndex == -1) ? ssp.length() : querySeparatorIndex;
+        final CharBuffer decodedLink = CharBuffer.allocate(linkEnd);
+        PercentDecoder.decode(ssp, 0, linkEnd, false, decodedLink, Integer.MAX_VALUE);
+        decodedLink.flip();
+        final Uri link = Uri.parse(decodedLink.toString());
         final String linkScheme = link.getScheme();
         if (!"https".equals(linkScheme)) {
             throw new IllegalArgumentException("Link scheme must be an https URL");
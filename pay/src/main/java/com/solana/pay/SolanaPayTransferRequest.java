@@ -18,6 +18,29 @@ public class SolanaPayTransferRequest extends SolanaPayURI {
     // An amount should be one or more digits, followed by an optional . and one or more digits
     private static final String AMOUNT_FORMAT_REGEX = "^\\d+(?:\\.\\d+)?$";
 
+    /**
+     * Maximum length of the decoded {@link SolanaPayAndroidContract#QUERY_PARAMETER_LABEL}, in UTF-8
+     * bytes. The label is not part of the transaction; it names the source of the request (e.g. a
+     * merchant) in a wallet's UI. This limit is a policy choice, generous for a name, which bounds
+     * the untrusted text a wallet must decode and display.
+     */
+    public static final int MAX_LABEL_LENGTH = 256;
+
+    /**
+     * Maximum length of the decoded {@link SolanaPayAndroidContract#QUERY_PARAMETER_MESSAGE}, in
+     * UTF-8 bytes. Like the label, the message is only displayed, never sent on chain; this limit
+     * is a policy choice which allows a short description of the payment (a few sentences).
+     */
+    public static final int MAX_MESSAGE_LENGTH = 1024;
+
+    /**
+     * Maximum length of the decoded {@link SolanaPayAndroidContract#QUERY_PARAMETER_MEMO}, in UTF-8
+     * bytes. This is a conservative limit, not an exact one: it leaves room within the 1232-byte
+     * transaction size limit for the transfer instruction, compute budget instructions and several
+     * reference accounts that accompany the memo.
+     */
+    public static final int MAX_MEMO_LENGTH = 566;
+
     /**
      * The query parameters from {@link #uri}, encoded as a relative {@link Uri}. The Solana Pay
      * URI format is opaque, and the Android {@link Uri} class won't parse the query parameters from
@@ -29,8 +52,9 @@ public class SolanaPayTransferRequest extends SolanaPayURI {
 
     /**
      * The transfer request recipient address.
-     * <p>NOTE: this has been validated to be a base58-encoded public key-like value, but it has
-     * not been verified to be an actual valid public key.</p>
+     * <p>NOTE: this has been validated to be a base58-encoded public key-like value. Unless this
+     * request was constructed with strict recipient validation, it has not been verified to be an
+     * actual valid public key.</p>
      */
     @NonNull
     public final String recipient;
@@ -41,6 +65,18 @@ public class SolanaPayTransferRequest extends SolanaPayURI {
      * @throws IllegalArgumentException if uri cannot be parsed as a valid Transfer Request
      */
     public SolanaPayTransferRequest(@NonNull Uri uri) {
+        this(uri, false);
+    }
+
+    /**
+     * Construct a new {@link SolanaPayTransferRequest}
+     * @param uri the {@link Uri} to parse as a Transfer Request
+     * @param strictRecipientValidation if true, the recipient must be a public key on the Ed25519
+     *      curve. Funds sent to a mistyped or off-curve recipient are unrecoverable; however, note
+     *      that this also rejects recipients which are program derived addresses.
+     * @throws IllegalArgumentException if uri cannot be parsed as a valid Transfer Request
+     */
+    public SolanaPayTransferRequest(@NonNull Uri uri, boolean strictRecipientValidation) {
         super(uri);
         final String encodedQuery = uri.getEncodedQuery();
         if (encodedQuery != null) {
@@ -48,11 +84,14 @@ public class SolanaPayTransferRequest extends SolanaPayURI {
         } else {
             queryParametersUri = Uri.EMPTY;
         }
-        recipient = validate();
+        recipient = validate(strictRecipientValidation);
     }
 
     @NonNull
-    private String validate() {
+    private String validate(boolean strictRecipientValidation) {
+        // Validate the encoding and length of free-form text parameters before any other processing
+        validateEncodedTextParameters();
+
         final String ssp = uri.getEncodedSchemeSpecificPart();
 
         // Recipient is everything from the start of the scheme-specific part through the first '?'
@@ -67,6 +106,9 @@ public class SolanaPayTransferRequest extends SolanaPayURI {
         if (!isBase58EncodedPublicKeyLikeValue(recipient)) {
             throw new IllegalArgumentException("Recipient must be a base58-encoded public key");
         }
+        if (strictRecipientValidation && !isBase58EncodedPublicKeyOnCurve(recipient)) {
+            throw new IllegalArgumentException("Recipient must be a public key on the Ed25519 curve");
+        }
 
         final List<String> amount = queryParametersUri.getQueryParameters(SolanaPayAndroidContract.QUERY_PARAMTER_AMOUNT);
         if (amount.size() > 1) {
@@ -111,6 +153,50 @@ public class SolanaPayTransferRequest extends SolanaPayURI {
         return recipient;
     }
 
+    private void validateEncodedTextParameters() {
+        final String encodedQuery = uri.getEncodedQuery();
+        if (encodedQuery == null) {
+            return;
+        }
+
+        int start = 0;
+        while (start <= encodedQuery.length()) {
+            int end = encodedQuery.indexOf('&', start);
+            if (end == -1) {
+                end = encodedQuery.length();
+            }
+            int separator = encodedQuery.indexOf('=', start);
+            if (separator == -1 || separator > end) {
+                separator = end;
+            }
+
+            final int maxLength;
+            if (encodedQuery.startsWith(SolanaPayAndroidContract.QUERY_PARAMETER_LABEL, start)
+                    && separator - start == SolanaPayAndroidContract.QUERY_PARAMETER_LABEL.length()) {
+                maxLength = MAX_LABEL_LENGTH;
+            } else if (encodedQuery.startsWith(SolanaPayAndroidContract.QUERY_PARAMETER_MESSAGE, start)
+                    && separator - start == SolanaPayAndroidContract.QUERY_PARAMETER_MESSAGE.length()) {
+                maxLength = MAX_MESSAGE_LENGTH;
+            } else if (encodedQuery.startsWith(SolanaPayAndroidContract.QUERY_PARAMETER_MEMO, start)
+                    && separator - start == SolanaPayAndroidContract.QUERY_PARAMETER_MEMO.length()) {
+                maxLength = MAX_MEMO_LENGTH;
+            } else {
+                maxLength = -1;
+            }
+
+            if (maxLength != -1 && separator < end) {
+                try {
+                    PercentDecoder.validate(encodedQuery, separator + 1, end, true, maxLength);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(encodedQuery.substring(start, separator) +
+                            " query parameter is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            start = end + 1;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
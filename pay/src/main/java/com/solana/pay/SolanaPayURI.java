@@ -46,12 +46,25 @@ public abstract class SolanaPayURI {
      * @throws IllegalArgumentException if uri cannot be parsed as a Solana Pay {@link Uri}
      */
     public static SolanaPayURI parse(@NonNull Uri uri) {
+        return parse(uri, false);
+    }
+
+    /**
+     * Try and parse the given {@link Uri} as any of the known Solana Pay formats:
+     * {@link SolanaPayTransferRequest} or {@link SolanaPayTransactionRequest}
+     * @param uri the Solana Pay {@link Uri} to parse
+     * @param strictRecipientValidation if true, the recipient of a {@link SolanaPayTransferRequest}
+     *      must be a public key on the Ed25519 curve
+     * @return a {@link SolanaPayURI} concrete subclass
+     * @throws IllegalArgumentException if uri cannot be parsed as a Solana Pay {@link Uri}
+     */
+    public static SolanaPayURI parse(@NonNull Uri uri, boolean strictRecipientValidation) {
         try {
             return new SolanaPayTransactionRequest(uri);
         } catch (IllegalArgumentException ignored) {}
 
         try {
-            return new SolanaPayTransferRequest(uri);
+            return new SolanaPayTransferRequest(uri, strictRecipientValidation);
         } catch (IllegalArgumentException ignored) {}
 
         throw new IllegalArgumentException("Unable to parse " + uri + " as a Solana Pay URI");
@@ -60,12 +73,31 @@ public abstract class SolanaPayURI {
     /**
      * Utility method to verify that the provided string is a valid base58-encoded Ed25519 public
      * key-like value. Note that this only checks that it is a key-like value; it doesn't verify
-     * that the value represents a point on any particular elliptic curve.
+     * that the value represents a point on any particular elliptic curve. See
+     * {@link #isBase58EncodedPublicKeyOnCurve(String)} for a strict check.
      * @param s the candidate value to verify
      * @return true if s is a valid base58-encoded Ed25519 public key-like value
      */
     protected static boolean isBase58EncodedPublicKeyLikeValue(@NonNull String s) {
         return s.matches(BASE58_ENCODED_ED25519_PUBLIC_KEY_LIKE_VALUE_REGEX);
     }
+
+    /**
+     * Utility method to verify that the provided string is a base58-encoded 32-byte value which
+     * decompresses to a point on the Ed25519 curve (i.e. a public key with a corresponding private
+     * key). Note that program derived addresses are, by construction, not on the curve.
+     * @param s the candidate value to verify
+     * @return true if s is a valid base58-encoded Ed25519 public key
+     */
+    protected static boolean isBase58EncodedPublicKeyOnCurve(@NonNull String s) {
+        // Any failure to decode means s is not a valid public key; never let it escape to callers,
+        // which only expect IllegalArgumentException from parsing
+        try {
+            final byte[] key = Base58.decode(s);
+            return key.length == Ed25519.POINT_SIZE && Ed25519.isOnCurve(key);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
 }
 
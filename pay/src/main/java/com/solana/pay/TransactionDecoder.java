@@ -0,0 +1,710 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Decodes serialized Solana transactions (such as those returned by a Transaction Request link)
+ * without building an object graph. The transaction is base64-decoded into a reusable buffer and
+ * validated once; afterwards, the legacy or v0 message is exposed through accessors (and the
+ * {@link Instruction} and {@link AddressTableLookup} flyweight views) which read directly from that
+ * buffer. Decoding a new transaction invalidates all data previously read from this decoder.
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class TransactionDecoder {
+    /** Maximum size of a serialized transaction, in bytes (the Solana packet data size) */
+    public static final int MAX_TRANSACTION_SIZE = 1232;
+
+    /** Size of a transaction signature, in bytes */
+    public static final int SIGNATURE_SIZE = 64;
+
+    /** Size of an account key (i.e. a public key) or blockhash, in bytes */
+    public static final int KEY_SIZE = 32;
+
+    /** The value of {@link #getVersion()} for legacy (unversioned) messages */
+    public static final int VERSION_LEGACY = -1;
+
+    private static final int VERSION_PREFIX_MASK = 0x80;
+
+    // Every instruction occupies at least 3 bytes, and every address table lookup at least 34
+    private static final int MAX_INSTRUCTIONS = MAX_TRANSACTION_SIZE / 3;
+    private static final int MAX_ADDRESS_TABLE_LOOKUPS = MAX_TRANSACTION_SIZE / (KEY_SIZE + 2);
+
+    private static final byte[] BASE64_INDEXES = new byte[128];
+    static {
+        Arrays.fill(BASE64_INDEXES, (byte) -1);
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_INDEXES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    @NonNull
+    private final byte[] bytes = new byte[MAX_TRANSACTION_SIZE];
+
+    @NonNull
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+    @NonNull
+    private final ByteBuffer readOnlyBuffer = buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+
+    @NonNull
+    private final int[] instructionOffsets = new int[MAX_INSTRUCTIONS];
+
+    @NonNull
+    private final int[] addressTableLookupOffsets = new int[MAX_ADDRESS_TABLE_LOOKUPS];
+
+    private boolean decoded;
+    private int length;
+    private int numSignatures;
+    private int signaturesOffset;
+    private int messageOffset;
+    private int version;
+    private int numRequiredSignatures;
+    private int numReadonlySignedAccounts;
+    private int numReadonlyUnsignedAccounts;
+    private int numStaticAccountKeys;
+    private int accountKeysOffset;
+    private int recentBlockhashOffset;
+    private int numInstructions;
+    private int numAddressTableLookups;
+    private int numLoadedWritableAccounts;
+    private int numLoadedReadonlyAccounts;
+
+    // Parse cursor, valid only during decode
+    private int position;
+
+    /** Construct a new {@link TransactionDecoder} */
+    public TransactionDecoder() {}
+
+    /**
+     * Decode a base64-encoded serialized transaction
+     * @param base64 the base64-encoded transaction (standard alphabet; padding is optional)
+     * @throws IllegalArgumentException if base64 is not valid base64, or does not encode a valid
+     *      transaction
+     */
+    public void decode(@NonNull CharSequence base64) {
+        decoded = false;
+        length = decodeBase64(base64, bytes);
+        parse();
+    }
+
+    /**
+     * Decode a serialized transaction. The transaction bytes are copied into this decoder.
+     * @param src the buffer containing the serialized transaction
+     * @param offset the offset of the transaction in src
+     * @param len the length of the transaction
+     * @throws IllegalArgumentException if src does not contain a valid transaction
+     */
+    public void decode(@NonNull byte[] src, int offset, int len) {
+        decoded = false;
+        if (len > MAX_TRANSACTION_SIZE) {
+            throw new IllegalArgumentException("Transaction exceeds " + MAX_TRANSACTION_SIZE + " bytes");
+        }
+        System.arraycopy(src, offset, bytes, 0, len);
+        length = len;
+        parse();
+    }
+
+    /**
+     * @return a read-only, little-endian view of the decoded transaction. All offsets returned by
+     *      this decoder are absolute indexes into this buffer. The buffer's position and limit are
+     *      not meaningful; use absolute get methods.
+     */
+    @NonNull
+    public ByteBuffer getBuffer() {
+        return readOnlyBuffer;
+    }
+
+    /** @return the length of the decoded transaction, in bytes */
+    public int getLength() {
+        checkDecoded();
+        return length;
+    }
+
+    /** @return the number of signatures */
+    public int getSignatureCount() {
+        checkDecoded();
+        return numSignatures;
+    }
+
+    /**
+     * @param index the signature index
+     * @return the offset of the 64-byte signature at index
+     */
+    public int getSignatureOffset(int index) {
+        checkIndex(index, getSignatureCount());
+        return signaturesOffset + index * SIGNATURE_SIZE;
+    }
+
+    /** @return the offset of the message (i.e. the bytes which are signed) */
+    public int getMessageOffset() {
+        checkDecoded();
+        return messageOffset;
+    }
+
+    /** @return the length of the message, in bytes */
+    public int getMessageLength() {
+        checkDecoded();
+        return length - messageOffset;
+    }
+
+    /** @return the message version (e.g. 0), or {@link #VERSION_LEGACY} for legacy messages */
+    public int getVersion() {
+        checkDecoded();
+        return version;
+    }
+
+    /** @return the number of signatures required for this message to be valid */
+    public int getNumRequiredSignatures() {
+        checkDecoded();
+        return numRequiredSignatures;
+    }
+
+    /** @return the number of signed, read-only account keys */
+    public int getNumReadonlySignedAccounts() {
+        checkDecoded();
+        return numReadonlySignedAccounts;
+    }
+
+    /** @return the number of unsigned, read-only account keys */
+    public int getNumReadonlyUnsignedAccounts() {
+        checkDecoded();
+        return numReadonlyUnsignedAccounts;
+    }
+
+    /** @return the number of account keys stored in the message itself */
+    public int getStaticAccountKeyCount() {
+        checkDecoded();
+        return numStaticAccountKeys;
+    }
+
+    /**
+     * @return the total number of account keys which may be referenced by instructions, including
+     *      those loaded from address lookup tables
+     */
+    public int getAccountKeyCount() {
+        checkDecoded();
+        return numStaticAccountKeys + numLoadedWritableAccounts + numLoadedReadonlyAccounts;
+    }
+
+    /**
+     * @param index the account index, in the range [0, {@link #getStaticAccountKeyCount()})
+     * @return the offset of the 32-byte account key at index
+     */
+    public int getAccountKeyOffset(int index) {
+        checkIndex(index, getStaticAccountKeyCount());
+        return accountKeysOffset + index * KEY_SIZE;
+    }
+
+    /**
+     * Copy a static account key
+     * @param index the account index, in the range [0, {@link #getStaticAccountKeyCount()})
+     * @param out a 32-byte buffer to receive the account key
+     */
+    public void getAccountKey(int index, @NonNull byte[] out) {
+        System.arraycopy(bytes, getAccountKeyOffset(index), out, 0, KEY_SIZE);
+    }
+
+    /**
+     * Compare an account key to a public key, without copying
+     * @param index the account index, in the range [0, {@link #getAccountKeyCount()})
+     * @param key the 32-byte public key
+     * @return true if the account at index is a static account key equal to key. Accounts loaded
+     *      from address lookup tables are never equal, as their keys are not part of the message.
+     */
+    public boolean accountKeyEquals(int index, @NonNull byte[] key) {
+        checkIndex(index, getAccountKeyCount());
+        if (index >= numStaticAccountKeys) {
+            return false;
+        }
+        return regionEquals(accountKeysOffset + index * KEY_SIZE, key);
+    }
+
+    /**
+     * @param index the account index, in the range [0, {@link #getAccountKeyCount()})
+     * @return true if the account at index is loaded from an address lookup table
+     */
+    public boolean isLoadedAccount(int index) {
+        checkIndex(index, getAccountKeyCount());
+        return index >= numStaticAccountKeys;
+    }
+
+    /**
+     * @param index the account index, in the range [0, {@link #getAccountKeyCount()})
+     * @return true if the account at index must sign the transaction
+     */
+    public boolean isSigner(int index) {
+        checkIndex(index, getAccountKeyCount());
+        return index < numRequiredSignatures;
+    }
+
+    /**
+     * @param index the account index, in the range [0, {@link #getAccountKeyCount()})
+     * @return true if the account at index is requested to be writable
+     */
+    public boolean isWritable(int index) {
+        checkIndex(index, getAccountKeyCount());
+        if (index < numRequiredSignatures) {
+            return index < numRequiredSignatures - numReadonlySignedAccounts;
+        } else if (index < numStaticAccountKeys) {
+            return index < numStaticAccountKeys - numReadonlyUnsignedAccounts;
+        } else {
+            // Loaded writable accounts precede loaded readonly accounts
+            return index < numStaticAccountKeys + numLoadedWritableAccounts;
+        }
+    }
+
+    /** @return the offset of the 32-byte recent blockhash */
+    public int getRecentBlockhashOffset() {
+        checkDecoded();
+        return recentBlockhashOffset;
+    }
+
+    /** @return the number of instructions */
+    public int getInstructionCount() {
+        checkDecoded();
+        return numInstructions;
+    }
+
+    /**
+     * Point an {@link Instruction} view at an instruction of the decoded message
+     * @param index the instruction index, in the range [0, {@link #getInstructionCount()})
+     * @param instruction the view to update
+     * @return instruction
+     */
+    @NonNull
+    public Instruction getInstruction(int index, @NonNull Instruction instruction) {
+        checkIndex(index, getInstructionCount());
+        instruction.set(this, instructionOffsets[index]);
+        return instruction;
+    }
+
+    /** @return the number of address table lookups (always 0 for legacy messages) */
+    public int getAddressTableLookupCount() {
+        checkDecoded();
+        return numAddressTableLookups;
+    }
+
+    /**
+     * Point an {@link AddressTableLookup} view at an address table lookup of the decoded message
+     * @param index the lookup index, in the range [0, {@link #getAddressTableLookupCount()})
+     * @param lookup the view to update
+     * @return lookup
+     */
+    @NonNull
+    public AddressTableLookup getAddressTableLookup(int index, @NonNull AddressTableLookup lookup) {
+        checkIndex(index, getAddressTableLookupCount());
+        lookup.set(this, addressTableLookupOffsets[index]);
+        return lookup;
+    }
+
+    /**
+     * Compare a region of the decoded transaction to a 32-byte key
+     * @param offset the offset of the region
+     * @param key the 32-byte key
+     * @return true if the 32 bytes at offset are equal to key
+     */
+    boolean regionEquals(int offset, @NonNull byte[] key) {
+        if (key.length != KEY_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < KEY_SIZE; i++) {
+            if (bytes[offset + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkDecoded() {
+        if (!decoded) {
+            throw new IllegalStateException("No transaction has been decoded");
+        }
+    }
+
+    private void checkIndex(int index, int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of range [0, " + count + ")");
+        }
+    }
+
+    // =============================================================================================
+    // Parsing
+    // =============================================================================================
+
+    private void parse() {
+        position = 0;
+
+        numSignatures = readCompactU16();
+        signaturesOffset = position;
+        skip(numSignatures * SIGNATURE_SIZE);
+
+        messageOffset = position;
+        final int prefix = readU8();
+        if ((prefix & VERSION_PREFIX_MASK) != 0) {
+            version = prefix & ~VERSION_PREFIX_MASK;
+            if (version != 0) {
+                throw new IllegalArgumentException("Unsupported message version " + version);
+            }
+            numRequiredSignatures = readU8();
+        } else {
+            version = VERSION_LEGACY;
+            numRequiredSignatures = prefix;
+        }
+        numReadonlySignedAccounts = readU8();
+        numReadonlyUnsignedAccounts = readU8();
+
+        numStaticAccountKeys = readCompactU16();
+        accountKeysOffset = position;
+        skip(numStaticAccountKeys * KEY_SIZE);
+
+        recentBlockhashOffset = position;
+        skip(KEY_SIZE);
+
+        numInstructions = readCompactU16();
+        if (numInstructions > MAX_INSTRUCTIONS) {
+            throw new IllegalArgumentException("Too many instructions");
+        }
+        for (int i = 0; i < numInstructions; i++) {
+            instructionOffsets[i] = position;
+            readU8(); // program ID index
+            skip(readCompactU16()); // account indexes
+            skip(readCompactU16()); // data
+        }
+
+        numAddressTableLookups = 0;
+        numLoadedWritableAccounts = 0;
+        numLoadedReadonlyAccounts = 0;
+        if (version != VERSION_LEGACY) {
+            numAddressTableLookups = readCompactU16();
+            if (numAddressTableLookups > MAX_ADDRESS_TABLE_LOOKUPS) {
+                throw new IllegalArgumentException("Too many address table lookups");
+            }
+            for (int i = 0; i < numAddressTableLookups; i++) {
+                addressTableLookupOffsets[i] = position;
+                skip(KEY_SIZE);
+                final int numWritable = readCompactU16();
+                skip(numWritable);
+                final int numReadonly = readCompactU16();
+                skip(numReadonly);
+                if (numWritable == 0 && numReadonly == 0) {
+                    throw new IllegalArgumentException("Address table lookups must load at least one account");
+                }
+                numLoadedWritableAccounts += numWritable;
+                numLoadedReadonlyAccounts += numReadonly;
+            }
+        }
+
+        if (position != length) {
+            throw new IllegalArgumentException("Transaction has " + (length - position) + " trailing bytes");
+        }
+
+        validate();
+        decoded = true;
+    }
+
+    // Matches the Solana runtime message sanitization rules
+    private void validate() {
+        if (numSignatures != numRequiredSignatures) {
+            throw new IllegalArgumentException("Signature count does not match the number of required signatures");
+        }
+        if (numReadonlySignedAccounts >= numRequiredSignatures) {
+            throw new IllegalArgumentException("Fee payer must be a writable signer");
+        }
+        if (numRequiredSignatures + numReadonlyUnsignedAccounts > numStaticAccountKeys) {
+            throw new IllegalArgumentException("Message header is inconsistent with the account keys");
+        }
+        final int numAccountKeys = numStaticAccountKeys + numLoadedWritableAccounts + numLoadedReadonlyAccounts;
+        if (numAccountKeys > 256) {
+            throw new IllegalArgumentException("Message references more than 256 accounts");
+        }
+        for (int i = 0; i < numInstructions; i++) {
+            int offset = instructionOffsets[i];
+            final int programIdIndex = bytes[offset++] & 0xff;
+            // Program IDs may not be loaded from address lookup tables, nor be the fee payer
+            if (programIdIndex == 0 || programIdIndex >= numStaticAccountKeys) {
+                throw new IllegalArgumentException("Instruction " + i + " has an invalid program ID index");
+            }
+            position = offset;
+            final int numAccounts = readCompactU16();
+            for (int j = 0; j < numAccounts; j++) {
+                if ((bytes[position + j] & 0xff) >= numAccountKeys) {
+                    throw new IllegalArgumentException("Instruction " + i + " has an invalid account index");
+                }
+            }
+        }
+    }
+
+    private int readU8() {
+        if (position >= length) {
+            throw new IllegalArgumentException("Transaction is truncated");
+        }
+        return bytes[position++] & 0xff;
+    }
+
+    private int readCompactU16() {
+        position = readCompactU16(bytes, position, length);
+        return compactU16Value;
+    }
+
+    // Result of the most recent readCompactU16(byte[], int, int)
+    private int compactU16Value;
+
+    private int readCompactU16(@NonNull byte[] src, int offset, int limit) {
+        int value = 0;
+        for (int i = 0; i < 3; i++) {
+            if (offset >= limit) {
+                throw new IllegalArgumentException("Transaction is truncated");
+            }
+            final int b = src[offset++] & 0xff;
+            if (i == 2 && b > 0x03) {
+                throw new IllegalArgumentException("compact-u16 value out of range");
+            }
+            value |= (b & 0x7f) << (7 * i);
+            if ((b & 0x80) == 0) {
+                if (b == 0 && i > 0) {
+                    throw new IllegalArgumentException("compact-u16 value is not canonically encoded");
+                }
+                compactU16Value = value;
+                return offset;
+            }
+        }
+        throw new IllegalArgumentException("compact-u16 value out of range");
+    }
+
+    private void skip(int n) {
+        if (n > length - position) {
+            throw new IllegalArgumentException("Transaction is truncated");
+        }
+        position += n;
+    }
+
+    // Decode base64 into out, returning the number of bytes decoded
+    private static int decodeBase64(@NonNull CharSequence src, @NonNull byte[] out) {
+        int end = src.length();
+        if (end % 4 == 0 && end > 0 && src.charAt(end - 1) == '=') {
+            end -= (src.charAt(end - 2) == '=') ? 2 : 1;
+        }
+        if (end % 4 == 1) {
+            throw new IllegalArgumentException("Invalid base64 length");
+        }
+        final int len = end / 4 * 3 + Math.max(0, end % 4 - 1);
+        if (len > out.length) {
+            throw new IllegalArgumentException("Transaction exceeds " + out.length + " bytes");
+        }
+
+        int accumulator = 0;
+        int bits = 0;
+        int n = 0;
+        for (int i = 0; i < end; i++) {
+            final char c = src.charAt(i);
+            final int digit = (c < 128) ? BASE64_INDEXES[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid base64 character at index " + i);
+            }
+            accumulator = (accumulator << 6) | digit;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                out[n++] = (byte) (accumulator >> bits);
+            }
+        }
+        if ((accumulator & ((1 << bits) - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid base64 padding bits");
+        }
+        return n;
+    }
+
+    /**
+     * A flyweight view of a compiled instruction. Obtain one with {@link #Instruction()}, and point
+     * it at an instruction with {@link TransactionDecoder#getInstruction(int, Instruction)}.
+     */
+    public static final class Instruction {
+        private TransactionDecoder decoder;
+        private int programIdIndex;
+        private int numAccounts;
+        private int accountsOffset;
+        private int dataLength;
+        private int dataOffset;
+
+        /** Construct a new, unset {@link Instruction} view */
+        public Instruction() {}
+
+        private void set(@NonNull TransactionDecoder decoder, int offset) {
+            this.decoder = decoder;
+            programIdIndex = decoder.bytes[offset++] & 0xff;
+            offset = decoder.readCompactU16(decoder.bytes, offset, decoder.length);
+            numAccounts = decoder.compactU16Value;
+            accountsOffset = offset;
+            offset = decoder.readCompactU16(decoder.bytes, offset + numAccounts, decoder.length);
+            dataLength = decoder.compactU16Value;
+            dataOffset = offset;
+        }
+
+        /** @return the decoder this instruction was read from */
+        @NonNull
+        public TransactionDecoder getDecoder() {
+            checkSet();
+            return decoder;
+        }
+
+        /** @return the account index of the program which executes this instruction */
+        public int getProgramIdIndex() {
+            checkSet();
+            return programIdIndex;
+        }
+
+        /**
+         * @param programId a 32-byte program ID
+         * @return true if this instruction is executed by programId
+         */
+        public boolean isProgram(@NonNull byte[] programId) {
+            return getDecoder().accountKeyEquals(programIdIndex, programId);
+        }
+
+        /** @return the number of accounts passed to this instruction */
+        public int getAccountCount() {
+            checkSet();
+            return numAccounts;
+        }
+
+        /**
+         * @param index the index within this instruction's accounts
+         * @return the account index (into the message account keys) of the account at index
+         */
+        public int getAccountIndex(int index) {
+            checkSet();
+            decoder.checkIndex(index, numAccounts);
+            return decoder.bytes[accountsOffset + index] & 0xff;
+        }
+
+        /** @return the offset of the instruction data */
+        public int getDataOffset() {
+            checkSet();
+            return dataOffset;
+        }
+
+        /** @return the length of the instruction data, in bytes */
+        public int getDataLength() {
+            checkSet();
+            return dataLength;
+        }
+
+        /**
+         * @param index the index within the instruction data
+         * @return the unsigned byte at index
+         */
+        public int getDataU8(int index) {
+            checkSet();
+            decoder.checkIndex(index, dataLength);
+            return decoder.bytes[dataOffset + index] & 0xff;
+        }
+
+        /**
+         * @param index the index within the instruction data
+         * @return the little-endian 32-bit value at index
+         */
+        public int getDataU32(int index) {
+            checkSet();
+            decoder.checkIndex(index + 3, dataLength);
+            return decoder.buffer.getInt(dataOffset + index);
+        }
+
+        /**
+         * @param index the index within the instruction data
+         * @return the little-endian 64-bit value at index. This should be interpreted as an unsigned
+         *      value; values greater than {@link Long#MAX_VALUE} are returned as negative numbers.
+         */
+        public long getDataU64(int index) {
+            checkSet();
+            decoder.checkIndex(index + 7, dataLength);
+            return decoder.buffer.getLong(dataOffset + index);
+        }
+
+        private void checkSet() {
+            if (decoder == null) {
+                throw new IllegalStateException("Instruction view has not been set");
+            }
+        }
+    }
+
+    /**
+     * A flyweight view of a v0 message address table lookup. Obtain one with
+     * {@link #AddressTableLookup()}, and point it at a lookup with
+     * {@link TransactionDecoder#getAddressTableLookup(int, AddressTableLookup)}.
+     */
+    public static final class AddressTableLookup {
+        private TransactionDecoder decoder;
+        private int accountKeyOffset;
+        private int numWritable;
+        private int writableOffset;
+        private int numReadonly;
+        private int readonlyOffset;
+
+        /** Construct a new, unset {@link AddressTableLookup} view */
+        public AddressTableLookup() {}
+
+        private void set(@NonNull TransactionDecoder decoder, int offset) {
+            this.decoder = decoder;
+            accountKeyOffset = offset;
+            offset = decoder.readCompactU16(decoder.bytes, offset + KEY_SIZE, decoder.length);
+            numWritable = decoder.compactU16Value;
+            writableOffset = offset;
+            offset = decoder.readCompactU16(decoder.bytes, offset + numWritable, decoder.length);
+            numReadonly = decoder.compactU16Value;
+            readonlyOffset = offset;
+        }
+
+        /** @return the offset of the 32-byte address lookup table account key */
+        public int getAccountKeyOffset() {
+            checkSet();
+            return accountKeyOffset;
+        }
+
+        /** @return the number of writable accounts loaded from the table */
+        public int getWritableIndexCount() {
+            checkSet();
+            return numWritable;
+        }
+
+        /**
+         * @param index the index within the writable indexes
+         * @return the table index of the writable account at index
+         */
+        public int getWritableIndex(int index) {
+            checkSet();
+            decoder.checkIndex(index, numWritable);
+            return decoder.bytes[writableOffset + index] & 0xff;
+        }
+
+        /** @return the number of read-only accounts loaded from the table */
+        public int getReadonlyIndexCount() {
+            checkSet();
+            return numReadonly;
+        }
+
+        /**
+         * @param index the index within the read-only indexes
+         * @return the table index of the read-only account at index
+         */
+        public int getReadonlyIndex(int index) {
+            checkSet();
+            decoder.checkIndex(index, numReadonly);
+            return decoder.bytes[readonlyOffset + index] & 0xff;
+        }
+
+        private void checkSet() {
+            if (decoder == null) {
+                throw new IllegalStateException("Address table lookup view has not been set");
+            }
+        }
+    }
+}
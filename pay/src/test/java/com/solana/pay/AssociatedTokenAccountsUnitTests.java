@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class AssociatedTokenAccountsUnitTests {
+    private static final String USDC_MINT = "EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v";
+
+    @Test
+    public void testDeriveAddress() {
+        final AssociatedTokenAccounts atas = new AssociatedTokenAccounts();
+        // NOTE: the first owner's ATA requires several bump seed iterations
+        assertEquals("EHw5TkyvSiqVEKiL24vMkzh9nz6hgtL9XtguvMvnjkyS",
+                atas.deriveAddress("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54", USDC_MINT));
+        assertEquals("EdiMStJPXBNQYjbNB2ZHdBRiodMFqzxYMBi8pgRh3fGj",
+                atas.deriveAddress("GUdsgKBn9vQ9HyEmZHqJgVv3Ced1tSGNzfrFtMSyHSgm", USDC_MINT));
+    }
+
+    @Test
+    public void testDeriveAddressCached() {
+        final AssociatedTokenAccounts atas = new AssociatedTokenAccounts(1);
+        final String first = atas.deriveAddress("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54", USDC_MINT);
+        assertEquals(first, atas.deriveAddress("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54", USDC_MINT));
+        atas.deriveAddress("GUdsgKBn9vQ9HyEmZHqJgVv3Ced1tSGNzfrFtMSyHSgm", USDC_MINT); // evicts first
+        assertEquals(first, atas.deriveAddress("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54", USDC_MINT));
+    }
+
+    @Test
+    public void testDeriveAddressCacheUnaffectedByCallerArrays() {
+        final AssociatedTokenAccounts atas = new AssociatedTokenAccounts();
+        final byte[] mint = Base58.decodePublicKey(USDC_MINT);
+        final byte[] tokenProgramId = Base58.decodePublicKey(AssociatedTokenAccounts.TOKEN_PROGRAM_ID);
+        final byte[] owner = Base58.decodePublicKey("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54");
+        assertEquals("EHw5TkyvSiqVEKiL24vMkzh9nz6hgtL9XtguvMvnjkyS",
+                Base58.encode(atas.deriveAddress(owner, mint, tokenProgramId)));
+
+        // Reusing the owner array for a different owner must not hit the first owner's cache entry
+        final byte[] otherOwner = Base58.decodePublicKey("GUdsgKBn9vQ9HyEmZHqJgVv3Ced1tSGNzfrFtMSyHSgm");
+        System.arraycopy(otherOwner, 0, owner, 0, owner.length);
+        assertEquals("EdiMStJPXBNQYjbNB2ZHdBRiodMFqzxYMBi8pgRh3fGj",
+                Base58.encode(atas.deriveAddress(owner, mint, tokenProgramId)));
+        assertEquals("EHw5TkyvSiqVEKiL24vMkzh9nz6hgtL9XtguvMvnjkyS",
+                atas.deriveAddress("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54", USDC_MINT));
+    }
+
+    @Test
+    public void testDeriveAddressesBatch() {
+        final AssociatedTokenAccounts atas = new AssociatedTokenAccounts(0);
+        final byte[] mint = Base58.decodePublicKey(USDC_MINT);
+        final byte[] tokenProgramId = Base58.decodePublicKey(AssociatedTokenAccounts.TOKEN_PROGRAM_ID);
+        final byte[][] owners = {
+                Base58.decodePublicKey("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54"),
+                Base58.decodePublicKey("GUdsgKBn9vQ9HyEmZHqJgVv3Ced1tSGNzfrFtMSyHSgm"),
+                Base58.decodePublicKey("C3xh5q61LtJatywjXwJ1Gh3yyUjEDmpNpDmEcxyCunPU"),
+        };
+        final byte[][] out = new byte[owners.length][32];
+
+        atas.deriveAddresses(owners, mint, tokenProgramId, out);
+
+        for (int i = 0; i < owners.length; i++) {
+            assertArrayEquals(atas.deriveAddress(owners[i], mint, tokenProgramId), out[i]);
+        }
+        assertEquals("EHw5TkyvSiqVEKiL24vMkzh9nz6hgtL9XtguvMvnjkyS", Base58.encode(out[0]));
+    }
+
+    @Test
+    public void testDeriveAddressToken2022DiffersFromToken() {
+        final AssociatedTokenAccounts atas = new AssociatedTokenAccounts();
+        final byte[] owner = Base58.decodePublicKey("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54");
+        final byte[] mint = Base58.decodePublicKey(USDC_MINT);
+        final byte[] token = atas.deriveAddress(owner, mint,
+                Base58.decodePublicKey(AssociatedTokenAccounts.TOKEN_PROGRAM_ID));
+        final byte[] token2022 = atas.deriveAddress(owner, mint,
+                Base58.decodePublicKey(AssociatedTokenAccounts.TOKEN_2022_PROGRAM_ID));
+        assertFalse(Arrays.equals(token, token2022));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+public class Base58UnitTests {
+    @Test
+    public void testRoundTrip() {
+        final String[] values = {
+                "11111111111111111111111111111111",
+                "84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54",
+                "So11111111111111111111111111111111111111112",
+                "1",
+                "",
+        };
+        for (String value : values) {
+            assertEquals(value, Base58.encode(Base58.decode(value)));
+        }
+        assertEquals(32, Base58.decode("11111111111111111111111111111111").length);
+    }
+
+    @Test
+    public void testDecodeLargestValueOfEachLength() {
+        // 'z' is the largest digit, so these need the most output bytes for their length (including
+        // 26, 41, 52, 56, 67 and 78 characters, which once overflowed the output buffer)
+        final BigInteger base = BigInteger.valueOf(58);
+        for (int length = 1; length <= 128; length++) {
+            final char[] zs = new char[length];
+            Arrays.fill(zs, 'z');
+            final String s = new String(zs);
+
+            final byte[] expected = stripSignByte(base.pow(length).subtract(BigInteger.ONE).toByteArray());
+            final byte[] decoded = Base58.decode(s);
+            assertArrayEquals("length " + length, expected, decoded);
+            assertEquals(s, Base58.encode(decoded));
+        }
+    }
+
+    @Test
+    public void testDecodeInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> Base58.decode("0OIl"));
+        assertThrows(IllegalArgumentException.class, () -> Base58.decode("abc\u00e9"));
+        assertThrows(IllegalArgumentException.class, () -> Base58.decodePublicKey("ABCDEF"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Base58.decodePublicKey("zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz"));
+    }
+
+    private static byte[] stripSignByte(byte[] bytes) {
+        return (bytes.length > 1 && bytes[0] == 0) ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+}
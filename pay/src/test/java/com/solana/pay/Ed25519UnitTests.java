@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Ed25519UnitTests {
+    private static final BigInteger P = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+    private static final BigInteger D = BigInteger.valueOf(-121665)
+            .multiply(BigInteger.valueOf(121666).modInverse(P)).mod(P);
+
+    // Straightforward (but slow, and not constant-time) reference implementation
+    private static boolean isOnCurveReference(byte[] point) {
+        final byte[] be = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            be[i] = point[31 - i];
+        }
+        be[0] &= 0x7f;
+        final BigInteger y = new BigInteger(1, be).mod(P);
+        final BigInteger y2 = y.multiply(y).mod(P);
+        final BigInteger u = y2.subtract(BigInteger.ONE).mod(P);
+        final BigInteger v = D.multiply(y2).add(BigInteger.ONE).mod(P);
+        final BigInteger x2 = u.multiply(v.modInverse(P)).mod(P);
+        return x2.signum() == 0 ||
+                x2.modPow(P.subtract(BigInteger.ONE).shiftRight(1), P).equals(BigInteger.ONE);
+    }
+
+    @Test
+    public void testKnownPoints() {
+        // Public keys
+        assertTrue(Ed25519.isOnCurve(Base58.decodePublicKey("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54")));
+        assertTrue(Ed25519.isOnCurve(Base58.decodePublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v")));
+        assertTrue(Ed25519.isOnCurve(Base58.decodePublicKey("11111111111111111111111111111111")));
+        // Program derived addresses
+        assertFalse(Ed25519.isOnCurve(Base58.decodePublicKey("BwqrghZA2htAcqq8dzP1WDAhTXYTYWj7CHxF5j7TDBAe")));
+        assertFalse(Ed25519.isOnCurve(Base58.decodePublicKey("EHw5TkyvSiqVEKiL24vMkzh9nz6hgtL9XtguvMvnjkyS")));
+    }
+
+    @Test
+    public void testEdgeCases() {
+        final byte[] point = new byte[32];
+        // y = 1 (the identity), with and without the sign bit
+        point[0] = 1;
+        assertEquals(isOnCurveReference(point), Ed25519.isOnCurve(point));
+        point[31] = (byte) 0x80;
+        assertEquals(isOnCurveReference(point), Ed25519.isOnCurve(point));
+        // y = p - 1 (i.e. -1), and non-canonical encodings of y >= p
+        Arrays.fill(point, (byte) 0xff);
+        point[31] = 0x7f;
+        for (int low = 0xe0; low <= 0xff; low++) {
+            point[0] = (byte) low;
+            assertEquals("y low byte " + low, isOnCurveReference(point), Ed25519.isOnCurve(point));
+        }
+    }
+
+    @Test
+    public void testMatchesReference() {
+        final Random random = new Random(1);
+        final byte[] point = new byte[32];
+        int onCurve = 0;
+        for (int i = 0; i < 500; i++) {
+            random.nextBytes(point);
+            final boolean expected = isOnCurveReference(point);
+            assertEquals(expected, Ed25519.isOnCurve(point));
+            if (expected) onCurve++;
+        }
+        // Roughly half of all random y-coordinates are on the curve
+        assertTrue(onCurve > 150 && onCurve < 350);
+    }
+
+    @Test
+    public void testBatch() {
+        final Random random = new Random(2);
+        final byte[][] points = new byte[64][32];
+        final boolean[] expected = new boolean[points.length];
+        boolean allExpected = true;
+        for (int i = 0; i < points.length; i++) {
+            random.nextBytes(points[i]);
+            expected[i] = isOnCurveReference(points[i]);
+            allExpected &= expected[i];
+        }
+        final boolean[] out = new boolean[points.length];
+
+        assertEquals(allExpected, Ed25519.areOnCurve(points, out));
+        assertArrayEquals(expected, out);
+        assertThrows(IllegalArgumentException.class,
+                () -> Ed25519.areOnCurve(new byte[][] { new byte[31] }, new boolean[1]));
+    }
+}
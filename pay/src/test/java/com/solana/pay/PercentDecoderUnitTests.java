@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class PercentDecoderUnitTests {
+    @Test
+    public void testDecodeToCharBuffer() {
+        final String encoded = "Caf%C3%A9+%F0%9F%98%80%20ok";
+        final CharBuffer dst = CharBuffer.allocate(encoded.length());
+        final int len = PercentDecoder.decode(encoded, 0, encoded.length(), true, dst, 64);
+        dst.flip();
+        assertEquals("Caf\u00E9 \uD83D\uDE00 ok", dst.toString());
+        assertEquals("Caf\u00E9 \uD83D\uDE00 ok".getBytes(StandardCharsets.UTF_8).length, len);
+    }
+
+    @Test
+    public void testDecodeToByteArray() {
+        final String encoded = "xxCaf%c3%a9+tea";
+        final byte[] dst = new byte[16];
+        final int len = PercentDecoder.decode(encoded, 2, encoded.length(), false, dst, 1, 16);
+        final byte[] expected = "Caf\u00E9+tea".getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, len);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], dst[i + 1]);
+        }
+    }
+
+    @Test
+    public void testDecodeUnencodedNonAscii() {
+        final String encoded = "Caf\u00E9 \uD83D\uDE00";
+        final byte[] dst = new byte[16];
+        final int len = PercentDecoder.decode(encoded, 0, encoded.length(), true, dst, 0, 16);
+        final byte[] expected = encoded.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, len);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], dst[i]);
+        }
+    }
+
+    @Test
+    public void testValidateWithoutBuffer() {
+        assertEquals(5, PercentDecoder.validate("a%20b%2Fc", 0, 9, true, 5));
+    }
+
+    @Test
+    public void testRejectsTooLong() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("abcdef", 0, 6, true, 5));
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("abcd%C3%A9", 0, 10, true, 5));
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.decode("abcdef", 0, 6, true, new byte[4], 0, 64));
+    }
+
+    @Test
+    public void testRejectsMalformedPercentEncoding() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("abc%2", 0, 5, true, 64));
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("abc%", 0, 4, true, 64));
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("abc%G0", 0, 6, true, 64));
+    }
+
+    @Test
+    public void testRejectsInvalidUtf8() {
+        // Continuation byte without a lead byte
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("%80", 0, 3, true, 64));
+        // Overlong encoding of '/'
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("%C0%AF", 0, 6, true, 64));
+        // Overlong 3-byte encoding
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("%E0%80%AF", 0, 9, true, 64));
+        // UTF-16 surrogate (U+D800)
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("%ED%A0%80", 0, 9, true, 64));
+        // Code point above U+10FFFF
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("%F4%90%80%80", 0, 12, true, 64));
+        // Truncated sequence
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("%E2%82", 0, 6, true, 64));
+        // Sequence interrupted by an ASCII character
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("%E2%82a", 0, 7, true, 64));
+        // Unpaired surrogate character
+        assertThrows(IllegalArgumentException.class,
+                () -> PercentDecoder.validate("a\uD83D", 0, 2, true, 64));
+    }
+}
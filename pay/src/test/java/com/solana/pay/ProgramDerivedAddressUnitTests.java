@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ProgramDerivedAddressUnitTests {
+    // Test vectors from the Solana SDK
+    private static final byte[] PROGRAM_ID = Base58.decodePublicKey("BPFLoaderUpgradeab1e11111111111111111111111");
+    private static final byte[] SEED_PUBLIC_KEY = Base58.decodePublicKey("SeedPubey1111111111111111111111111111111111");
+
+    @Test
+    public void testCreateProgramAddress() {
+        final ProgramDerivedAddress pda = new ProgramDerivedAddress();
+        final byte[] out = new byte[32];
+
+        assertTrue(pda.createProgramAddress(new byte[][] { new byte[0], { 1 } }, PROGRAM_ID, out));
+        assertEquals("BwqrghZA2htAcqq8dzP1WDAhTXYTYWj7CHxF5j7TDBAe", Base58.encode(out));
+
+        assertTrue(pda.createProgramAddress(new byte[][] {
+                "\u2609".getBytes(StandardCharsets.UTF_8), { 0 } }, PROGRAM_ID, out));
+        assertEquals("13yWmRpaTR4r5nAktwLqMpRNr28tnVUZw26rTvPSSB19", Base58.encode(out));
+
+        assertTrue(pda.createProgramAddress(new byte[][] {
+                "Talking".getBytes(StandardCharsets.US_ASCII),
+                "Squirrels".getBytes(StandardCharsets.US_ASCII) }, PROGRAM_ID, out));
+        assertEquals("2fnQrngrQT4SeLcdToJAD96phoEjNL2man2kfRLCASVk", Base58.encode(out));
+
+        assertTrue(pda.createProgramAddress(new byte[][] { SEED_PUBLIC_KEY, { 1 } }, PROGRAM_ID, out));
+        assertEquals("976ymqVnfE32QFe6NfGDctSvVa36LWnvYxhU6G2232YL", Base58.encode(out));
+    }
+
+    @Test
+    public void testCreateProgramAddressSeedLimits() {
+        final ProgramDerivedAddress pda = new ProgramDerivedAddress();
+        final byte[] out = new byte[32];
+        assertThrows(IllegalArgumentException.class,
+                () -> pda.createProgramAddress(new byte[][] { new byte[33] }, PROGRAM_ID, out));
+        assertThrows(IllegalArgumentException.class,
+                () -> pda.createProgramAddress(new byte[17][0], PROGRAM_ID, out));
+        assertThrows(IllegalArgumentException.class,
+                () -> pda.findProgramAddress(new byte[16][0], PROGRAM_ID, out));
+    }
+
+    @Test
+    public void testFindProgramAddress() {
+        final ProgramDerivedAddress pda = new ProgramDerivedAddress();
+        final byte[] out = new byte[32];
+        final byte[] check = new byte[32];
+        for (int i = 0; i < 100; i++) {
+            final byte[][] seeds = { ("seed" + i).getBytes(StandardCharsets.US_ASCII) };
+            final int bump = pda.findProgramAddress(seeds, PROGRAM_ID, out);
+            assertTrue(bump >= 1 && bump <= 255);
+            assertFalse(Ed25519.isOnCurve(out));
+            assertTrue(pda.createProgramAddress(new byte[][] { seeds[0], { (byte) bump } }, PROGRAM_ID, check));
+            assertArrayEquals(out, check);
+        }
+    }
+}
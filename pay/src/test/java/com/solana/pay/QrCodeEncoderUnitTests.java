@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class QrCodeEncoderUnitTests {
+    private static final String TRANSFER_REQUEST = "solana:mvines9iiHiQTysrwkJjGf2gb9Ex9jXJX8ns3qwf2kN" +
+            "?amount=1&label=Michael&message=Thanks%20for%20all%20the%20fish&memo=OrderId12345";
+
+    @Test
+    public void testReedSolomonRemainder() {
+        // "HELLO WORLD", version 1-M (from the ISO/IEC 18004 worked example)
+        final byte[] data = toBytes(32, 91, 11, 120, 209, 114, 220, 77, 67, 64, 236, 17, 236, 17, 236, 17);
+        final byte[] ecc = new byte[10];
+        QrCodeEncoder.reedSolomonRemainder(data, 0, data.length, ecc.length, ecc, 0);
+        assertArrayEquals(toBytes(196, 35, 39, 119, 235, 215, 231, 226, 93, 23), ecc);
+    }
+
+    @Test
+    public void testFormatBits() {
+        assertEquals(0b111011111000100, QrCodeEncoder.getFormatBits(QrCodeEncoder.ErrorCorrectionLevel.L, 0));
+        assertEquals(0b101010000010010, QrCodeEncoder.getFormatBits(QrCodeEncoder.ErrorCorrectionLevel.M, 0));
+        assertEquals(0b011010101011111, QrCodeEncoder.getFormatBits(QrCodeEncoder.ErrorCorrectionLevel.Q, 0));
+        assertEquals(0b001011010001001, QrCodeEncoder.getFormatBits(QrCodeEncoder.ErrorCorrectionLevel.H, 0));
+        assertEquals(0b100000011001110, QrCodeEncoder.getFormatBits(QrCodeEncoder.ErrorCorrectionLevel.M, 5));
+    }
+
+    @Test
+    public void testVersionBits() {
+        assertEquals(0b000111110010010100, QrCodeEncoder.getVersionBits(7));
+        assertEquals(0b101000110001101001, QrCodeEncoder.getVersionBits(40));
+    }
+
+    @Test
+    public void testModeAndVersionSelection() {
+        final QrCodeEncoder encoder = new QrCodeEncoder(QrCodeEncoder.ErrorCorrectionLevel.M);
+
+        // Version 1-M capacities are 34 numeric, 20 alphanumeric, and 14 byte characters
+        encoder.encode(repeat('7', 34));
+        assertEquals(QrCodeEncoder.Mode.NUMERIC, encoder.getMode());
+        assertEquals(1, encoder.getVersion());
+        encoder.encode(repeat('7', 35));
+        assertEquals(2, encoder.getVersion());
+
+        encoder.encode(repeat('A', 20));
+        assertEquals(QrCodeEncoder.Mode.ALPHANUMERIC, encoder.getMode());
+        assertEquals(1, encoder.getVersion());
+        encoder.encode(repeat('A', 21));
+        assertEquals(2, encoder.getVersion());
+
+        encoder.encode(repeat('a', 14));
+        assertEquals(QrCodeEncoder.Mode.BYTE, encoder.getMode());
+        assertEquals(1, encoder.getVersion());
+        encoder.encode(repeat('a', 15));
+        assertEquals(2, encoder.getVersion());
+
+        // Non-ASCII characters are encoded as UTF-8 (2 bytes each, here)
+        encoder.encode(repeat('\u00e9', 7));
+        assertEquals(1, encoder.getVersion());
+        encoder.encode(repeat('\u00e9', 8));
+        assertEquals(2, encoder.getVersion());
+
+        encoder.encode(TRANSFER_REQUEST);
+        assertEquals(QrCodeEncoder.Mode.BYTE, encoder.getMode());
+        assertEquals(8, encoder.getVersion());
+        assertEquals(49, encoder.getSize());
+    }
+
+    @Test
+    public void testMaximumCapacity() {
+        final QrCodeEncoder encoder = new QrCodeEncoder(QrCodeEncoder.ErrorCorrectionLevel.L);
+        encoder.encode(repeat('a', 2953));
+        assertEquals(40, encoder.getVersion());
+        assertEquals(177, encoder.getSize());
+        assertThrows(IllegalArgumentException.class, () -> encoder.encode(repeat('a', 2954)));
+
+        final QrCodeEncoder encoderH = new QrCodeEncoder(QrCodeEncoder.ErrorCorrectionLevel.H);
+        encoderH.encode(repeat('a', 1273));
+        assertEquals(40, encoderH.getVersion());
+        assertThrows(IllegalArgumentException.class, () -> encoderH.encode(repeat('a', 1274)));
+    }
+
+    @Test
+    public void testFunctionPatterns() {
+        for (QrCodeEncoder.ErrorCorrectionLevel ecl : QrCodeEncoder.ErrorCorrectionLevel.values()) {
+            final QrCodeEncoder encoder = new QrCodeEncoder(ecl);
+            encoder.encode(TRANSFER_REQUEST);
+            final int size = encoder.getSize();
+
+            assertFinderPattern(encoder, 0, 0);
+            assertFinderPattern(encoder, size - 7, 0);
+            assertFinderPattern(encoder, 0, size - 7);
+            for (int i = 8; i < size - 8; i++) {
+                assertEquals(i % 2 == 0, encoder.isDark(i, 6));
+                assertEquals(i % 2 == 0, encoder.isDark(6, i));
+            }
+            assertTrue(encoder.isDark(8, size - 8));
+
+            // Both copies of the format bits must describe the encoder's ECL and chosen mask
+            final int formatBits = QrCodeEncoder.getFormatBits(ecl, encoder.getMask());
+            assertEquals(formatBits, readFormatBits(encoder, false));
+            assertEquals(formatBits, readFormatBits(encoder, true));
+        }
+    }
+
+    @Test
+    public void testEncoderReuse() {
+        final QrCodeEncoder encoder = new QrCodeEncoder(QrCodeEncoder.ErrorCorrectionLevel.Q);
+        encoder.encode(TRANSFER_REQUEST);
+        final boolean[] first = snapshot(encoder);
+        final int firstMask = encoder.getMask();
+
+        // Encoding something larger, then smaller, must not leave stale modules behind
+        encoder.encode(repeat('x', 500));
+        encoder.encode("HELLO WORLD");
+        assertEquals(1, encoder.getVersion());
+
+        encoder.encode(TRANSFER_REQUEST);
+        assertEquals(firstMask, encoder.getMask());
+        assertArrayEquals(first, snapshot(encoder));
+    }
+
+    @Test
+    public void testRender() {
+        final QrCodeEncoder encoder = new QrCodeEncoder(QrCodeEncoder.ErrorCorrectionLevel.M);
+        encoder.encode("HELLO WORLD");
+        final int size = encoder.getSize();
+        assertEquals(21, size);
+        assertEquals(29, encoder.getMinimumRenderSize());
+
+        // 100x90 fits a scale factor of 3 (87 pixels), centered
+        final int width = 100;
+        final int height = 90;
+        final int[] pixels = new int[width * height];
+        encoder.render(pixels, width, height, 1, 0);
+        final int scale = 3;
+        final int left = (width - size * scale) / 2;
+        final int top = (height - size * scale) / 2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int mx = Math.floorDiv(x - left, scale);
+                final int my = Math.floorDiv(y - top, scale);
+                final boolean dark = mx >= 0 && mx < size && my >= 0 && my < size && encoder.isDark(mx, my);
+                assertEquals("pixel (" + x + ", " + y + ")", dark ? 1 : 0, pixels[y * width + x]);
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> encoder.render(new int[28 * 28], 28, 28, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> encoder.render(new int[10], 29, 29, 1, 0));
+    }
+
+    @Test
+    public void testNotEncoded() {
+        final QrCodeEncoder encoder = new QrCodeEncoder(QrCodeEncoder.ErrorCorrectionLevel.M);
+        assertThrows(IllegalStateException.class, encoder::getVersion);
+        assertThrows(IllegalStateException.class, () -> encoder.isDark(0, 0));
+    }
+
+    private static void assertFinderPattern(QrCodeEncoder encoder, int left, int top) {
+        for (int dy = 0; dy < 7; dy++) {
+            for (int dx = 0; dx < 7; dx++) {
+                final int dist = Math.max(Math.abs(dx - 3), Math.abs(dy - 3));
+                assertEquals(dist != 2, encoder.isDark(left + dx, top + dy));
+            }
+        }
+    }
+
+    private static int readFormatBits(QrCodeEncoder encoder, boolean secondCopy) {
+        final int size = encoder.getSize();
+        int bits = 0;
+        for (int i = 0; i < 15; i++) {
+            final boolean bit;
+            if (secondCopy) {
+                bit = (i < 8) ? encoder.isDark(size - 1 - i, 8) : encoder.isDark(8, size - 15 + i);
+            } else if (i < 6) {
+                bit = encoder.isDark(8, i);
+            } else if (i < 8) {
+                bit = encoder.isDark(8, i + 1);
+            } else if (i == 8) {
+                bit = encoder.isDark(7, 8);
+            } else {
+                bit = encoder.isDark(14 - i, 8);
+            }
+            bits |= (bit ? 1 : 0) << i;
+        }
+        return bits;
+    }
+
+    private static boolean[] snapshot(QrCodeEncoder encoder) {
+        final int size = encoder.getSize();
+        final boolean[] modules = new boolean[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                modules[y * size + x] = encoder.isDark(x, y);
+            }
+        }
+        return modules;
+    }
+
+    private static String repeat(char c, int n) {
+        final StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] toBytes(int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -161,6 +161,71 @@ public class SolanaPayURIUnitTests {
                 () -> SolanaPayURI.parse(Uri.parse(testUri)));
     }
 
+    @Test
+    public void testSolanaPayURITransferMemoTooLong() {
+        final StringBuilder memo = new StringBuilder();
+        for (int i = 0; i <= SolanaPayTransferRequest.MAX_MEMO_LENGTH; i++) {
+            memo.append('a');
+        }
+        final String testUri = "solana:84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54" +
+                "?amount=100" +
+                "&memo=" + memo;
+        assertThrows(IllegalArgumentException.class,
+                () -> SolanaPayURI.parse(Uri.parse(testUri)));
+    }
+
+    @Test
+    public void testSolanaPayURITransferLabelInvalidUTF8() {
+        final String testUri = "solana:84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54" +
+                "?amount=100" +
+                "&label=Caf%C3" + // truncated UTF-8 sequence
+                "&memo=Test%20xfer";
+        assertThrows(IllegalArgumentException.class,
+                () -> SolanaPayURI.parse(Uri.parse(testUri)));
+    }
+
+    @Test
+    public void testSolanaPayURITransferMessageInvalidPercentEncoding() {
+        final String testUri = "solana:84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54" +
+                "?amount=100" +
+                "&message=100%" + // incomplete percent-encoding
+                "&memo=Test%20xfer";
+        assertThrows(IllegalArgumentException.class,
+                () -> SolanaPayURI.parse(Uri.parse(testUri)));
+    }
+
+    @Test
+    public void testSolanaPayURITransferStrictRecipientValidation() {
+        final String testUri = "solana:84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54" +
+                "?amount=100" +
+                "&memo=Test%20xfer";
+        final SolanaPayURI solanaPayURI = SolanaPayURI.parse(Uri.parse(testUri), true);
+
+        assertTrue(solanaPayURI instanceof SolanaPayTransferRequest);
+        assertEquals("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54", ((SolanaPayTransferRequest) solanaPayURI).recipient);
+    }
+
+    @Test
+    public void testSolanaPayURITransferStrictRecipientValidationOffCurve() {
+        final String testUri = "solana:BwqrghZA2htAcqq8dzP1WDAhTXYTYWj7CHxF5j7TDBAe" + // a program derived address
+                "?amount=100" +
+                "&memo=Test%20xfer";
+        assertTrue(SolanaPayURI.parse(Uri.parse(testUri)) instanceof SolanaPayTransferRequest);
+        assertThrows(IllegalArgumentException.class,
+                () -> SolanaPayURI.parse(Uri.parse(testUri), true));
+    }
+
+    @Test
+    public void testSolanaPayURITransferStrictRecipientValidationOverlong() {
+        // 41 characters is within the public key-like length range, but decodes to more than 32
+        // bytes (and once overflowed the base58 decoder)
+        final String testUri = "solana:zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz?amount=100";
+        assertThrows(IllegalArgumentException.class,
+                () -> SolanaPayURI.parse(Uri.parse(testUri), true));
+        assertThrows(IllegalArgumentException.class,
+                () -> SolanaPayURI.parse(Uri.parse("solana:zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz"), true));
+    }
+
     @Test
     public void testSolanaPayURIransaction() {
         final String testUri = "solana:https%3A%2F%2Fwww.test.com";
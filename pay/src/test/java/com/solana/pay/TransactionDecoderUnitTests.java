@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class TransactionDecoderUnitTests {
+    private static final byte[] PAYER = Base58.decodePublicKey("84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54");
+    private static final byte[] RECIPIENT = Base58.decodePublicKey("mvines9iiHiQTysrwkJjGf2gb9Ex9jXJX8ns3qwf2kN");
+    private static final byte[] USDC_MINT = Base58.decodePublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v");
+    private static final byte[] PAYER_USDC = Base58.decodePublicKey("EHw5TkyvSiqVEKiL24vMkzh9nz6hgtL9XtguvMvnjkyS");
+    private static final byte[] SYSTEM_PROGRAM = Base58.decodePublicKey(InstructionRecognizer.SYSTEM_PROGRAM_ID);
+    private static final byte[] TOKEN_PROGRAM = Base58.decodePublicKey(AssociatedTokenAccounts.TOKEN_PROGRAM_ID);
+    private static final byte[] MEMO_PROGRAM = Base58.decodePublicKey(InstructionRecognizer.MEMO_PROGRAM_ID);
+    private static final byte[] LOOKUP_TABLE = Base58.decodePublicKey("BPFLoaderUpgradeab1e11111111111111111111111");
+    private static final byte[] BLOCKHASH = new byte[32];
+    static {
+        for (int i = 0; i < BLOCKHASH.length; i++) {
+            BLOCKHASH[i] = (byte) (0xa0 + i);
+        }
+    }
+
+    @Test
+    public void testLegacySystemTransferAndMemo() {
+        // Accounts: [0] payer (writable signer), [1] recipient (writable), [2] system, [3] memo
+        final ByteArrayOutputStream tx = new ByteArrayOutputStream();
+        tx.write(1);
+        tx.write(new byte[64], 0, 64);
+        tx.write(1);
+        tx.write(0);
+        tx.write(2);
+        tx.write(4);
+        writeAll(tx, PAYER, RECIPIENT, SYSTEM_PROGRAM, MEMO_PROGRAM, BLOCKHASH);
+        tx.write(2);
+        writeInstruction(tx, 2, new int[] { 0, 1 },
+                toBytes(2, 0, 0, 0, 0x00, 0xca, 0x9a, 0x3b, 0, 0, 0, 0)); // 1 SOL
+        writeInstruction(tx, 3, new int[0], "Order \u2116 42".getBytes(StandardCharsets.UTF_8));
+
+        final TransactionDecoder decoder = new TransactionDecoder();
+        decoder.decode(Base64.getEncoder().encodeToString(tx.toByteArray()));
+
+        assertEquals(tx.size(), decoder.getLength());
+        assertEquals(TransactionDecoder.VERSION_LEGACY, decoder.getVersion());
+        assertEquals(1, decoder.getSignatureCount());
+        assertEquals(1, decoder.getSignatureOffset(0));
+        assertEquals(65, decoder.getMessageOffset());
+        assertEquals(tx.size() - 65, decoder.getMessageLength());
+        assertEquals(1, decoder.getNumRequiredSignatures());
+        assertEquals(0, decoder.getNumReadonlySignedAccounts());
+        assertEquals(2, decoder.getNumReadonlyUnsignedAccounts());
+        assertEquals(4, decoder.getStaticAccountKeyCount());
+        assertEquals(4, decoder.getAccountKeyCount());
+        assertEquals(0, decoder.getAddressTableLookupCount());
+
+        assertTrue(decoder.accountKeyEquals(0, PAYER));
+        assertTrue(decoder.accountKeyEquals(1, RECIPIENT));
+        assertFalse(decoder.accountKeyEquals(1, PAYER));
+        final byte[] key = new byte[32];
+        decoder.getAccountKey(3, key);
+        assertArrayEquals(MEMO_PROGRAM, key);
+        assertTrue(decoder.isSigner(0));
+        assertFalse(decoder.isSigner(1));
+        assertTrue(decoder.isWritable(0));
+        assertTrue(decoder.isWritable(1));
+        assertFalse(decoder.isWritable(2));
+        assertFalse(decoder.isWritable(3));
+        assertEquals((byte) 0xa0, decoder.getBuffer().get(decoder.getRecentBlockhashOffset()));
+
+        assertEquals(2, decoder.getInstructionCount());
+        final TransactionDecoder.Instruction ix = new TransactionDecoder.Instruction();
+        decoder.getInstruction(0, ix);
+        assertEquals(InstructionRecognizer.Type.SYSTEM_TRANSFER, InstructionRecognizer.identify(ix));
+        assertEquals(1_000_000_000L, InstructionRecognizer.getLamports(ix));
+        assertEquals(0, ix.getAccountIndex(0));
+        assertEquals(1, ix.getAccountIndex(1));
+        assertThrows(IllegalArgumentException.class, () -> InstructionRecognizer.getTokenAmount(ix));
+
+        decoder.getInstruction(1, ix);
+        assertEquals(InstructionRecognizer.Type.MEMO, InstructionRecognizer.identify(ix));
+        assertEquals("Order \u2116 42", InstructionRecognizer.getMemo(ix));
+        assertThrows(IllegalArgumentException.class, () -> InstructionRecognizer.getLamports(ix));
+    }
+
+    @Test
+    public void testV0TokenTransferWithAddressTableLookup() {
+        // Static accounts: [0] payer, [1] payer USDC account, [2] token program, [3] USDC mint
+        // Loaded accounts: [4] recipient USDC account (writable), [5] unused (read-only)
+        final ByteArrayOutputStream tx = new ByteArrayOutputStream();
+        tx.write(1);
+        tx.write(new byte[64], 0, 64);
+        tx.write(0x80);
+        tx.write(1);
+        tx.write(0);
+        tx.write(2);
+        tx.write(4);
+        writeAll(tx, PAYER, PAYER_USDC, TOKEN_PROGRAM, USDC_MINT, BLOCKHASH);
+        tx.write(2);
+        writeInstruction(tx, 2, new int[] { 1, 3, 4, 0 },
+                toBytes(12, 0x40, 0x42, 0x0f, 0, 0, 0, 0, 0, 6)); // 1 USDC
+        writeInstruction(tx, 2, new int[] { 1, 4, 0 },
+                toBytes(3, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff)); // u64::MAX
+        tx.write(1);
+        writeAll(tx, LOOKUP_TABLE);
+        tx.write(1);
+        tx.write(7);
+        tx.write(1);
+        tx.write(9);
+
+        final TransactionDecoder decoder = new TransactionDecoder();
+        decoder.decode(Base64.getEncoder().withoutPadding().encodeToString(tx.toByteArray()));
+
+        assertEquals(0, decoder.getVersion());
+        assertEquals(4, decoder.getStaticAccountKeyCount());
+        assertEquals(6, decoder.getAccountKeyCount());
+        assertFalse(decoder.isLoadedAccount(3));
+        assertTrue(decoder.isLoadedAccount(4));
+        assertTrue(decoder.isWritable(4));
+        assertFalse(decoder.isWritable(5));
+        assertFalse(decoder.accountKeyEquals(4, RECIPIENT));
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.getAccountKeyOffset(4));
+
+        final TransactionDecoder.Instruction ix = new TransactionDecoder.Instruction();
+        decoder.getInstruction(0, ix);
+        assertEquals(InstructionRecognizer.Type.TOKEN_TRANSFER_CHECKED, InstructionRecognizer.identify(ix));
+        assertEquals(1_000_000L, InstructionRecognizer.getTokenAmount(ix));
+        assertEquals(6, InstructionRecognizer.getTokenDecimals(ix));
+        assertTrue(decoder.accountKeyEquals(ix.getAccountIndex(1), USDC_MINT));
+        assertEquals(4, ix.getAccountIndex(2));
+
+        decoder.getInstruction(1, ix);
+        assertEquals(InstructionRecognizer.Type.TOKEN_TRANSFER, InstructionRecognizer.identify(ix));
+        assertEquals(-1L, InstructionRecognizer.getTokenAmount(ix));
+
+        assertEquals(1, decoder.getAddressTableLookupCount());
+        final TransactionDecoder.AddressTableLookup lookup = new TransactionDecoder.AddressTableLookup();
+        decoder.getAddressTableLookup(0, lookup);
+        assertTrue(decoder.regionEquals(lookup.getAccountKeyOffset(), LOOKUP_TABLE));
+        assertEquals(1, lookup.getWritableIndexCount());
+        assertEquals(7, lookup.getWritableIndex(0));
+        assertEquals(1, lookup.getReadonlyIndexCount());
+        assertEquals(9, lookup.getReadonlyIndex(0));
+    }
+
+    @Test
+    public void testDecoderReuse() {
+        final TransactionDecoder decoder = new TransactionDecoder();
+        final byte[] tx = minimalTransaction(toBytes(1, 2, 3));
+        decoder.decode(tx, 0, tx.length);
+        assertEquals(1, decoder.getInstructionCount());
+
+        // A failed decode leaves the decoder without a transaction
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("!!!!"));
+        assertThrows(IllegalStateException.class, decoder::getInstructionCount);
+
+        decoder.decode(Base64.getEncoder().encodeToString(tx));
+        assertEquals(1, decoder.getInstructionCount());
+        final TransactionDecoder.Instruction ix = decoder.getInstruction(0, new TransactionDecoder.Instruction());
+        assertEquals(3, ix.getDataLength());
+        assertEquals(2, ix.getDataU8(1));
+        assertEquals(InstructionRecognizer.Type.UNKNOWN, InstructionRecognizer.identify(ix));
+    }
+
+    @Test
+    public void testCompactU16() {
+        // Instruction data of 128 bytes requires a 2-byte compact-u16 length (0x80 0x01)
+        final byte[] tx = minimalTransaction(new byte[128]);
+        final TransactionDecoder decoder = new TransactionDecoder();
+        decoder.decode(tx, 0, tx.length);
+        assertEquals(128, decoder.getInstruction(0, new TransactionDecoder.Instruction()).getDataLength());
+
+        // Non-canonical encoding of 0 (0x80 0x00) is rejected
+        final byte[] nonCanonical = minimalTransaction(new byte[0]);
+        final byte[] aliased = new byte[nonCanonical.length + 1];
+        System.arraycopy(nonCanonical, 0, aliased, 0, nonCanonical.length - 1);
+        aliased[aliased.length - 2] = (byte) 0x80;
+        aliased[aliased.length - 1] = 0;
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(aliased, 0, aliased.length));
+    }
+
+    @Test
+    public void testInvalidTransactions() {
+        final TransactionDecoder decoder = new TransactionDecoder();
+        final byte[] valid = minimalTransaction(new byte[0]);
+
+        // Truncated
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(valid, 0, valid.length - 1));
+
+        // Trailing bytes
+        final byte[] trailing = new byte[valid.length + 1];
+        System.arraycopy(valid, 0, trailing, 0, valid.length);
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(trailing, 0, trailing.length));
+
+        // Signature count does not match header
+        final byte[] badHeader = valid.clone();
+        badHeader[65] = 2;
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(badHeader, 0, badHeader.length));
+
+        // Program ID index out of range
+        final byte[] badProgram = valid.clone();
+        badProgram[badProgram.length - 3] = 5;
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(badProgram, 0, badProgram.length));
+
+        // Unsupported message version
+        final byte[] badVersion = new byte[valid.length + 1];
+        System.arraycopy(valid, 0, badVersion, 0, 65);
+        badVersion[65] = (byte) 0x81;
+        System.arraycopy(valid, 65, badVersion, 66, valid.length - 65);
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(badVersion, 0, badVersion.length));
+
+        // Too large, and invalid base64
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(new byte[TransactionDecoder.MAX_TRANSACTION_SIZE + 1], 0,
+                        TransactionDecoder.MAX_TRANSACTION_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("AQ=A"));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("AR=="));
+    }
+
+    // A legacy transaction with one signer and one instruction (for program [1]) with the given data
+    private static byte[] minimalTransaction(byte[] data) {
+        final ByteArrayOutputStream tx = new ByteArrayOutputStream();
+        tx.write(1);
+        tx.write(new byte[64], 0, 64);
+        tx.write(1);
+        tx.write(0);
+        tx.write(1);
+        tx.write(2);
+        writeAll(tx, PAYER, LOOKUP_TABLE, BLOCKHASH);
+        tx.write(1);
+        writeInstruction(tx, 1, new int[0], data);
+        return tx.toByteArray();
+    }
+
+    private static void writeInstruction(ByteArrayOutputStream out, int programIdIndex, int[] accounts,
+                                         byte[] data) {
+        out.write(programIdIndex);
+        writeCompactU16(out, accounts.length);
+        for (int account : accounts) {
+            out.write(account);
+        }
+        writeCompactU16(out, data.length);
+        out.write(data, 0, data.length);
+    }
+
+    private static void writeCompactU16(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeAll(ByteArrayOutputStream out, byte[]... arrays) {
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+    }
+
+    private static byte[] toBytes(int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
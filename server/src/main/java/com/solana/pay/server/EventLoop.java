@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single-threaded event loop, owning a {@link Selector} and all channels registered with it.
+ * Work from other threads is handed to the loop with {@link #execute(Runnable)}. Every registered
+ * {@link Handler} is also ticked periodically, so that it can enforce deadlines.
+ */
+final class EventLoop implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(EventLoop.class.getName());
+
+    /** Receives readiness events for a channel registered with an {@link EventLoop} */
+    interface Handler {
+        void onSelected(SelectionKey key);
+
+        /** Called on the loop thread at least once per tick interval */
+        void onTick(long nowNanos);
+
+        /** Called on the loop thread when the loop shuts down */
+        void onShutdown();
+    }
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final long tickMs;
+    private volatile boolean running = true;
+    private volatile boolean terminated;
+
+    EventLoop(String name, long tickMs) throws IOException {
+        this.tickMs = tickMs;
+        selector = Selector.open();
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Run task on the loop thread
+     * @return true if task will run; false if the loop has terminated, in which case the caller
+     *      must release any resources that task would have taken ownership of
+     */
+    boolean execute(Runnable task) {
+        tasks.add(task);
+        // Pairs with run(), which sets terminated before its final drain of tasks; either that
+        // drain sees task, or this sees terminated
+        if (terminated && tasks.remove(task)) {
+            return false;
+        }
+        selector.wakeup();
+        return true;
+    }
+
+    /** Stop the loop, closing all of its channels */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    void join(long timeoutMs) throws InterruptedException {
+        thread.join(timeoutMs);
+    }
+
+    @Override
+    public void run() {
+        long nextTickNanos = System.nanoTime() + tickMs * 1000000L;
+        while (running) {
+            try {
+                selector.select(tickMs);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Selector failed; stopping event loop", e);
+                break;
+            }
+
+            runTasks();
+
+            final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                final SelectionKey key = it.next();
+                it.remove();
+                if (key.isValid()) {
+                    try {
+                        ((Handler) key.attachment()).onSelected(key);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, "Unhandled exception in event loop", e);
+                    }
+                }
+            }
+
+            final long now = System.nanoTime();
+            if (now - nextTickNanos >= 0) {
+                nextTickNanos = now + tickMs * 1000000L;
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid()) {
+                        try {
+                            ((Handler) key.attachment()).onTick(now);
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.SEVERE, "Unhandled exception in event loop tick", e);
+                        }
+                    }
+                }
+            }
+        }
+
+        terminated = true;
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            ((Handler) key.attachment()).onShutdown();
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Unhandled exception in event loop task", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single HTTP/1.1 connection, owned by an {@link EventLoop}. Requests are handled one at a time,
+ * in order; pipelined requests are buffered until the response to the previous request has been
+ * queued. All methods must be called on the owning loop's thread.
+ * <p>A connection which makes no progress for the server's idle timeout is closed: progress is a
+ * complete request being received, or response bytes being written. Partial requests do not count
+ * as progress, so a client which sends a request slowly cannot hold a connection open
+ * indefinitely. No deadline applies while a transaction handler is building a response.</p>
+ */
+final class HttpConnection implements EventLoop.Handler {
+    private static final Logger LOGGER = Logger.getLogger(HttpConnection.class.getName());
+
+    /** Maximum size of the request line and headers, in bytes */
+    static final int MAX_HEADER_SIZE = 8192;
+
+    /** Maximum size of a request body, in bytes */
+    static final int MAX_BODY_SIZE = 4096;
+
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONNECTION = "connection".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE = "close".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEEP_ALIVE = "keep-alive".getBytes(StandardCharsets.US_ASCII);
+
+    private final TransactionRequestServer server;
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private SelectionKey key;
+
+    // In write mode; bytes [0, position) are received but not yet consumed. Sized to hold the
+    // largest acceptable request (headers, the blank line which terminates them, and body).
+    private final ByteBuffer in = ByteBuffer.allocate(MAX_HEADER_SIZE + 4 + MAX_BODY_SIZE);
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+
+    private boolean processing;
+    private boolean awaitingResponse;
+    private boolean closeAfterWrite;
+    private boolean closed;
+    private long deadlineNanos;
+
+    HttpConnection(TransactionRequestServer server, EventLoop loop, SocketChannel channel) {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+    }
+
+    void register() {
+        extendDeadline();
+        try {
+            key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+        } catch (ClosedChannelException e) {
+            close();
+        }
+    }
+
+    @Override
+    public void onSelected(SelectionKey key) {
+        if (key.isWritable()) {
+            flush();
+        }
+        if (!closed && key.isReadable()) {
+            read();
+        }
+    }
+
+    @Override
+    public void onTick(long nowNanos) {
+        if (closed || awaitingResponse || nowNanos - deadlineNanos < 0) {
+            return;
+        }
+        if (closeAfterWrite || in.position() == 0) {
+            close(); // idle between requests, or not reading its last response
+        } else {
+            sendErrorAndClose(408, "Request Timeout", "The request was not received in time");
+            extendDeadline(); // allow the response one more timeout period to be written
+        }
+    }
+
+    @Override
+    public void onShutdown() {
+        close();
+    }
+
+    /** Close a connection which was never registered with its loop (e.g. because it had shut down) */
+    void abort() {
+        close();
+    }
+
+    private void extendDeadline() {
+        deadlineNanos = System.nanoTime() + server.getIdleTimeoutNanos();
+    }
+
+    private void read() {
+        final int n;
+        try {
+            n = channel.read(in);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (n == -1) {
+            close();
+            return;
+        }
+        processRequests();
+    }
+
+    private void processRequests() {
+        if (processing) {
+            return; // a handler completed synchronously; the outer call will continue processing
+        }
+        processing = true;
+        try {
+            final byte[] buf = in.array();
+            while (!closed && !awaitingResponse && !closeAfterWrite) {
+                final int limit = in.position();
+                final int consumed = processRequest(buf, limit);
+                if (consumed == 0) {
+                    break; // incomplete request; wait for more data
+                }
+                extendDeadline();
+                System.arraycopy(buf, consumed, buf, 0, limit - consumed);
+                in.position(limit - consumed);
+            }
+        } finally {
+            processing = false;
+        }
+    }
+
+    // Parse and dispatch a request from buf[0, limit), returning the number of bytes consumed
+    // (or 0 if the request is not yet complete)
+    private int processRequest(byte[] buf, int limit) {
+        final int headerEnd = indexOfHeaderEnd(buf, Math.min(limit, MAX_HEADER_SIZE + 4));
+        if (headerEnd == -1) {
+            if (limit >= MAX_HEADER_SIZE + 4) {
+                sendErrorAndClose(431, "Request Header Fields Too Large", "Request headers are too large");
+            }
+            return 0;
+        }
+        final long startNanos = System.nanoTime();
+
+        // Request line
+        // Each line (including the last, whose CRLF begins the header terminator) ends with CR
+        final int lineEnd = indexOf(buf, 0, headerEnd + 1, (byte) '\r');
+        final int methodEnd = indexOf(buf, 0, lineEnd, (byte) ' ');
+        final int targetEnd = (methodEnd == -1) ? -1 : indexOf(buf, methodEnd + 1, lineEnd, (byte) ' ');
+        if (methodEnd <= 0 || targetEnd <= methodEnd + 1) {
+            sendErrorAndClose(400, "Bad Request", "Malformed request line");
+            return 0;
+        }
+        final String method = new String(buf, 0, methodEnd, StandardCharsets.US_ASCII);
+        final String target = new String(buf, methodEnd + 1, targetEnd - methodEnd - 1, StandardCharsets.US_ASCII);
+        final String version = new String(buf, targetEnd + 1, lineEnd - targetEnd - 1, StandardCharsets.US_ASCII);
+        final boolean http11;
+        if ("HTTP/1.1".equals(version)) {
+            http11 = true;
+        } else if ("HTTP/1.0".equals(version)) {
+            http11 = false;
+        } else {
+            sendErrorAndClose(505, "HTTP Version Not Supported", "Only HTTP/1.0 and HTTP/1.1 are supported");
+            return 0;
+        }
+
+        // Headers
+        int contentLength = -1;
+        boolean keepAlive = http11;
+        for (int lineStart = lineEnd + 2; lineStart < headerEnd; ) {
+            final int end = indexOf(buf, lineStart, headerEnd + 1, (byte) '\r');
+            final int colon = indexOf(buf, lineStart, end, (byte) ':');
+            if (colon <= lineStart) {
+                sendErrorAndClose(400, "Bad Request", "Malformed header");
+                return 0;
+            }
+            int valueStart = colon + 1;
+            int valueEnd = end;
+            while (valueStart < valueEnd && (buf[valueStart] == ' ' || buf[valueStart] == '\t')) valueStart++;
+            while (valueEnd > valueStart && (buf[valueEnd - 1] == ' ' || buf[valueEnd - 1] == '\t')) valueEnd--;
+
+            if (equalsIgnoreCase(buf, lineStart, colon, CONTENT_LENGTH)) {
+                final int value = parseContentLength(buf, valueStart, valueEnd);
+                if (value < 0) {
+                    sendErrorAndClose(400, "Bad Request", "Invalid Content-Length");
+                    return 0;
+                } else if (contentLength != -1 && value != contentLength) {
+                    // A proxy in front of this server may frame the request by the other value
+                    // (RFC 9112 section 6.3)
+                    sendErrorAndClose(400, "Bad Request", "Conflicting Content-Length headers");
+                    return 0;
+                }
+                contentLength = value;
+                if (contentLength > MAX_BODY_SIZE) {
+                    sendErrorAndClose(413, "Payload Too Large", "Request body is too large");
+                    return 0;
+                }
+            } else if (equalsIgnoreCase(buf, lineStart, colon, CONNECTION)) {
+                if (equalsIgnoreCase(buf, valueStart, valueEnd, CLOSE)) {
+                    keepAlive = false;
+                } else if (equalsIgnoreCase(buf, valueStart, valueEnd, KEEP_ALIVE)) {
+                    keepAlive = true;
+                }
+            } else if (equalsIgnoreCase(buf, lineStart, colon, TRANSFER_ENCODING)) {
+                sendErrorAndClose(501, "Not Implemented", "Transfer-Encoding is not supported");
+                return 0;
+            }
+            lineStart = end + 2;
+        }
+
+        if (contentLength == -1) {
+            contentLength = 0;
+        }
+        final int bodyStart = headerEnd + 4;
+        if (limit - bodyStart < contentLength) {
+            return 0; // body not yet received
+        }
+
+        try {
+            dispatch(method, target, buf, bodyStart, contentLength, keepAlive, startNanos);
+        } catch (RuntimeException e) {
+            // Never leave a request unanswered (and buffered, to be re-parsed on the next read)
+            LOGGER.log(Level.WARNING, "Failed handling " + method + " " + target, e);
+            awaitingResponse = false;
+            sendErrorAndClose(500, "Internal Server Error", "Unable to handle request");
+        }
+        return bodyStart + contentLength;
+    }
+
+    private void dispatch(String method, String target, byte[] buf, int bodyOffset, int bodyLength,
+                          boolean keepAlive, long startNanos) {
+        final int querySeparator = target.indexOf('?');
+        final String path = (querySeparator == -1) ? target : target.substring(0, querySeparator);
+        final String query = (querySeparator == -1) ? null : target.substring(querySeparator + 1);
+
+        final Route route = server.getRoute(path);
+        if (route == null) {
+            send(HttpResponses.error(404, "Not Found", "No Transaction Request endpoint at " + path, keepAlive), keepAlive);
+            return;
+        }
+
+        switch (method) {
+            case "GET":
+                route.getLatency.record(System.nanoTime() - startNanos);
+                send(ByteBuffer.wrap(keepAlive ? route.getResponseKeepAlive : route.getResponseClose), keepAlive);
+                break;
+            case "POST":
+                handlePost(route, path, query, buf, bodyOffset, bodyLength, keepAlive, startNanos);
+                break;
+            case "OPTIONS":
+                route.optionsLatency.record(System.nanoTime() - startNanos);
+                send(HttpResponses.preflight(keepAlive), keepAlive);
+                break;
+            default:
+                send(HttpResponses.error(405, "Method Not Allowed", "Method " + method + " is not allowed", keepAlive), keepAlive);
+                break;
+        }
+    }
+
+    private void handlePost(Route route, String path, String query, byte[] buf, int bodyOffset,
+                            int bodyLength, boolean keepAlive, long startNanos) {
+        final String account;
+        try {
+            account = Json.getStringMember(new String(buf, bodyOffset, bodyLength, StandardCharsets.UTF_8), "account");
+            if (account == null) {
+                throw new IllegalArgumentException("Request body must contain an account");
+            }
+            Base58.decodePublicKey(account);
+        } catch (IllegalArgumentException e) {
+            route.postLatency.record(System.nanoTime() - startNanos);
+            send(HttpResponses.error(400, "Bad Request", e.getMessage(), keepAlive), keepAlive);
+            return;
+        }
+
+        awaitingResponse = true;
+        setInterest(SelectionKey.OP_READ, false); // stop reading until the response is queued
+
+        CompletionStage<TransactionResponse> stage;
+        try {
+            stage = route.handler.createTransaction(new TransactionRequest(account, path, query));
+        } catch (RuntimeException e) {
+            onTransactionCreated(route, null, e, keepAlive, startNanos);
+            return;
+        }
+        stage.whenComplete((response, t) -> {
+            if (loop.inEventLoop()) {
+                onTransactionCreated(route, response, t, keepAlive, startNanos);
+            } else {
+                loop.execute(() -> onTransactionCreated(route, response, t, keepAlive, startNanos));
+            }
+        });
+    }
+
+    private void onTransactionCreated(Route route, TransactionResponse response, Throwable t,
+                                      boolean keepAlive, long startNanos) {
+        if (closed) {
+            return;
+        }
+        final byte[] bytes;
+        if (t != null) {
+            final Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+            if (cause instanceof IllegalArgumentException) {
+                bytes = HttpResponses.error(400, "Bad Request", cause.getMessage(), keepAlive);
+            } else {
+                LOGGER.log(Level.WARNING, "Transaction request handler for " + route.path + " failed", cause);
+                bytes = HttpResponses.error(500, "Internal Server Error", "Unable to create transaction", keepAlive);
+            }
+        } else if (response == null) {
+            LOGGER.warning("Transaction request handler for " + route.path + " returned no response");
+            bytes = HttpResponses.error(500, "Internal Server Error", "Unable to create transaction", keepAlive);
+        } else {
+            bytes = HttpResponses.transaction(response, keepAlive);
+        }
+        route.postLatency.record(System.nanoTime() - startNanos);
+        send(bytes, keepAlive);
+
+        awaitingResponse = false;
+        extendDeadline();
+        if (!closed && !closeAfterWrite) {
+            setInterest(SelectionKey.OP_READ, true);
+            processRequests(); // handle any pipelined requests
+        }
+    }
+
+    private void sendErrorAndClose(int status, String reason, String message) {
+        send(HttpResponses.error(status, reason, message, false), false);
+    }
+
+    private void send(byte[] response, boolean keepAlive) {
+        send(ByteBuffer.wrap(response), keepAlive);
+    }
+
+    private void send(ByteBuffer response, boolean keepAlive) {
+        if (!keepAlive) {
+            closeAfterWrite = true;
+            setInterest(SelectionKey.OP_READ, false);
+        }
+        out.add(response);
+        flush();
+    }
+
+    private void flush() {
+        try {
+            while (!out.isEmpty()) {
+                final ByteBuffer head = out.peek();
+                if (channel.write(head) > 0) {
+                    extendDeadline();
+                }
+                if (head.hasRemaining()) {
+                    setInterest(SelectionKey.OP_WRITE, true);
+                    return;
+                }
+                out.poll();
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        setInterest(SelectionKey.OP_WRITE, false);
+        if (closeAfterWrite) {
+            close();
+        }
+    }
+
+    private void setInterest(int op, boolean enabled) {
+        if (key != null && key.isValid()) {
+            final int ops = key.interestOps();
+            key.interestOps(enabled ? (ops | op) : (ops & ~op));
+        }
+    }
+
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.clear();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        server.onConnectionClosed();
+    }
+
+    private static int indexOfHeaderEnd(byte[] buf, int limit) {
+        for (int i = 0; i + 3 < limit; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // lowercase must be lowercase ASCII
+    private static boolean equalsIgnoreCase(byte[] buf, int from, int to, byte[] lowercase) {
+        if (to - from != lowercase.length) {
+            return false;
+        }
+        for (int i = 0; i < lowercase.length; i++) {
+            int c = buf[from + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowercase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the parsed value, or -1 if it is not a valid (or is an unreasonably large) length
+    private static int parseContentLength(byte[] buf, int from, int to) {
+        if (from == to || to - from > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            if (buf[i] < '0' || buf[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (buf[i] - '0');
+        }
+        return value;
+    }
+}
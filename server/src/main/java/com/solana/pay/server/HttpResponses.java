@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serialization of the HTTP/1.1 responses sent by a {@link TransactionRequestServer}
+ */
+final class HttpResponses {
+    static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+
+    // Wallets running in browsers make cross-origin requests to the Transaction Request endpoint
+    private static final String CORS_HEADERS = "Access-Control-Allow-Origin: *\r\n";
+    private static final String CORS_PREFLIGHT_HEADERS =
+            "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
+            "Access-Control-Allow-Headers: Content-Type, Accept, Accept-Encoding\r\n" +
+            "Access-Control-Max-Age: 86400\r\n";
+    private static final String ALLOW_HEADER = "Allow: GET, POST, OPTIONS\r\n";
+
+    /**
+     * Serialize an HTTP response
+     * @param status the status code
+     * @param reason the reason phrase
+     * @param body the JSON body, or null for no body
+     * @param keepAlive whether the connection will be kept open after this response
+     * @param extraHeaders additional header lines (each terminated by CRLF), or null
+     * @return the serialized response
+     */
+    static byte[] build(int status, String reason, String body, boolean keepAlive, String extraHeaders) {
+        final byte[] bodyBytes = (body == null) ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        final StringBuilder sb = new StringBuilder(128)
+                .append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n")
+                .append(CORS_HEADERS);
+        if (body != null) {
+            sb.append("Content-Type: ").append(CONTENT_TYPE_JSON).append("\r\n");
+        }
+        sb.append("Content-Length: ").append(bodyBytes.length).append("\r\n")
+                .append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        if (extraHeaders != null) {
+            sb.append(extraHeaders);
+        }
+        sb.append("\r\n");
+
+        final byte[] head = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        final byte[] response = new byte[head.length + bodyBytes.length];
+        System.arraycopy(head, 0, response, 0, head.length);
+        System.arraycopy(bodyBytes, 0, response, head.length, bodyBytes.length);
+        return response;
+    }
+
+    /** Serialize a 200 response to a Transaction Request GET */
+    static byte[] label(String label, String icon, boolean keepAlive) {
+        final StringBuilder body = new StringBuilder("{\"label\":");
+        Json.quote(body, label).append(",\"icon\":");
+        Json.quote(body, icon).append('}');
+        return build(200, "OK", body.toString(), keepAlive, null);
+    }
+
+    /** Serialize a 200 response to a Transaction Request POST */
+    static byte[] transaction(TransactionResponse response, boolean keepAlive) {
+        final StringBuilder body = new StringBuilder(response.transaction.length() + 64)
+                .append("{\"transaction\":");
+        Json.quote(body, response.transaction);
+        if (response.message != null) {
+            body.append(",\"message\":");
+            Json.quote(body, response.message);
+        }
+        body.append('}');
+        return build(200, "OK", body.toString(), keepAlive, null);
+    }
+
+    /** Serialize an error response, with a JSON body describing the error */
+    static byte[] error(int status, String reason, String message, boolean keepAlive) {
+        final StringBuilder body = new StringBuilder("{\"message\":");
+        Json.quote(body, message).append('}');
+        return build(status, reason, body.toString(), keepAlive, status == 405 ? ALLOW_HEADER : null);
+    }
+
+    /** Serialize a response to a CORS preflight request */
+    static byte[] preflight(boolean keepAlive) {
+        return build(204, "No Content", null, keepAlive, CORS_PREFLIGHT_HEADERS);
+    }
+
+    /** Not constructable */
+    private HttpResponses() {}
+}
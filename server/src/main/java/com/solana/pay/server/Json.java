@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+/**
+ * The minimal JSON support needed by the Transaction Request protocol: quoting strings for
+ * responses, and extracting a top-level string member from a request body
+ */
+final class Json {
+    private static final int MAX_DEPTH = 16;
+
+    /**
+     * Append s to sb as a quoted JSON string
+     * @return sb
+     */
+    static StringBuilder quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Get the value of a top-level string member of a JSON object
+     * @param json the JSON text
+     * @param name the member name
+     * @return the member value, or null if the object has no member with that name
+     * @throws IllegalArgumentException if json is not a JSON object, or if the member is present
+     *      but is not a string
+     */
+    static String getStringMember(String json, String name) {
+        final Parser p = new Parser(json);
+        p.skipWhitespace();
+        p.expect('{');
+        String result = null;
+        p.skipWhitespace();
+        if (!p.consume('}')) {
+            do {
+                p.skipWhitespace();
+                final String key = p.parseString();
+                p.skipWhitespace();
+                p.expect(':');
+                p.skipWhitespace();
+                if (key.equals(name)) {
+                    if (p.peek() != '"') {
+                        throw new IllegalArgumentException("Member '" + name + "' must be a string");
+                    }
+                    result = p.parseString();
+                } else {
+                    p.skipValue(1);
+                }
+                p.skipWhitespace();
+            } while (p.consume(','));
+            p.expect('}');
+        }
+        p.skipWhitespace();
+        if (!p.atEnd()) {
+            throw new IllegalArgumentException("Unexpected content after JSON object");
+        }
+        return result;
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int i;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        boolean atEnd() {
+            return i >= s.length();
+        }
+
+        char peek() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return s.charAt(i);
+        }
+
+        boolean consume(char c) {
+            if (!atEnd() && s.charAt(i) == c) {
+                i++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at offset " + i);
+            }
+        }
+
+        void skipWhitespace() {
+            while (!atEnd()) {
+                final char c = s.charAt(i);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    break;
+                }
+                i++;
+            }
+        }
+
+        String parseString() {
+            expect('"');
+            StringBuilder sb = null;
+            final int start = i;
+            while (true) {
+                final char c = peek();
+                if (c == '"') {
+                    final String result = (sb == null) ? s.substring(start, i) : sb.toString();
+                    i++;
+                    return result;
+                } else if (c == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder().append(s, start, i);
+                    }
+                    i++;
+                    final char e = peek();
+                    i++;
+                    switch (e) {
+                        case '"': sb.append('"'); break;
+                        case '\\': sb.append('\\'); break;
+                        case '/': sb.append('/'); break;
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        case 'n': sb.append('\n'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'u':
+                            if (i + 4 > s.length()) {
+                                throw new IllegalArgumentException("Truncated unicode escape");
+                            }
+                            try {
+                                sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                            } catch (NumberFormatException ex) {
+                                throw new IllegalArgumentException("Invalid unicode escape", ex);
+                            }
+                            i += 4;
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Invalid escape '\\" + e + "'");
+                    }
+                } else if (c < 0x20) {
+                    throw new IllegalArgumentException("Unescaped control character in string");
+                } else {
+                    if (sb != null) {
+                        sb.append(c);
+                    }
+                    i++;
+                }
+            }
+        }
+
+        void skipValue(int depth) {
+            if (depth > MAX_DEPTH) {
+                throw new IllegalArgumentException("JSON is nested too deeply");
+            }
+            final char c = peek();
+            if (c == '"') {
+                parseString();
+            } else if (c == '{' || c == '[') {
+                final char close = (c == '{') ? '}' : ']';
+                i++;
+                skipWhitespace();
+                if (consume(close)) {
+                    return;
+                }
+                do {
+                    skipWhitespace();
+                    if (c == '{') {
+                        parseString();
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                    }
+                    skipValue(depth + 1);
+                    skipWhitespace();
+                } while (consume(','));
+                expect(close);
+            } else {
+                // Number or literal; validate loosely, as the value is ignored
+                final int start = i;
+                while (!atEnd() && "+-.0123456789eEtrufalsn".indexOf(s.charAt(i)) != -1) {
+                    i++;
+                }
+                if (i == start) {
+                    throw new IllegalArgumentException("Unexpected '" + c + "' at offset " + i);
+                }
+            }
+        }
+    }
+
+    /** Not constructable */
+    private Json() {}
+}
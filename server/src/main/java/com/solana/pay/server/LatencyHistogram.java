@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, log-linear histogram of latencies (in nanoseconds). Each power of two is divided
+ * into 16 linear sub-buckets, so recorded values are accurate to within 1/16 (6.25%), across the
+ * full range of long values. Recording is lock-free and does not allocate; it is safe to record
+ * and read from any thread.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /** Construct a new, empty {@link LatencyHistogram} */
+    public LatencyHistogram() {}
+
+    /**
+     * Record a latency
+     * @param nanos the latency, in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    /**
+     * Add all latencies recorded by another histogram to this one
+     * @param other the {@link LatencyHistogram} to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            final long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalNanos.addAndGet(other.totalNanos.get());
+        final long otherMax = other.maxNanos.get();
+        long max;
+        while (otherMax > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, otherMax)) {
+            // retry
+        }
+    }
+
+    /** @return the number of recorded latencies */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /** @return the largest recorded latency, in nanoseconds (exact) */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /** @return the mean recorded latency, in nanoseconds (exact), or 0 if none are recorded */
+    public long getMeanNanos() {
+        final long count = totalCount.get();
+        return (count == 0) ? 0 : totalNanos.get() / count;
+    }
+
+    /**
+     * Get the latency at a percentile
+     * @param percentile the percentile, in the range [0, 100]
+     * @return an upper bound (within the histogram's precision) on the latency, in nanoseconds,
+     *      at or below which percentile percent of the recorded latencies fall, or 0 if none are
+     *      recorded
+     */
+    public long getNanosAtPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be in the range [0, 100]");
+        }
+        final long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long cumulative = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target) {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get(); // only reachable when racing with concurrent recording
+    }
+
+    /** Remove all recorded latencies */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        final long upper = ((mantissa + 1) << shift) - 1;
+        return (upper < 0) ? Long.MAX_VALUE : upper;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                getCount(), getMeanNanos() / 1000.0,
+                getNanosAtPercentile(50) / 1000.0, getNanosAtPercentile(90) / 1000.0,
+                getNanosAtPercentile(99) / 1000.0, getNanosAtPercentile(99.9) / 1000.0,
+                getMaxNanos() / 1000.0);
+    }
+}
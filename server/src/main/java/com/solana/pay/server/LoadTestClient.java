@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a Transaction Request server with Solana Pay URIs, as a wallet would: for each URI, a GET
+ * of the link (for the label and icon), followed by a POST with a wallet account (for the
+ * transaction). Each connection runs on its own thread, and issues requests back-to-back over a
+ * keep-alive connection.
+ * <p>Links are https URLs, as required by the Solana Pay specification, but the client connects to
+ * the link host and port over plain HTTP; i.e. it targets a {@link TransactionRequestServer}
+ * directly, not the TLS terminator which would sit in front of it.</p>
+ */
+public final class LoadTestClient {
+    private static final int NUM_ACCOUNTS = 256;
+    private static final int SOCKET_TIMEOUT_MS = 30000;
+
+    /** The outcome of a load test run */
+    public static final class Result {
+        /** Number of successful requests (GET and POST each count as one request) */
+        public final long requests;
+
+        /** Number of failed requests */
+        public final long errors;
+
+        /** Wall-clock duration of the run, in nanoseconds */
+        public final long elapsedNanos;
+
+        /** Client-observed latencies of GET requests */
+        public final LatencyHistogram getLatency;
+
+        /** Client-observed latencies of POST requests */
+        public final LatencyHistogram postLatency;
+
+        Result(long requests, long errors, long elapsedNanos, LatencyHistogram getLatency,
+               LatencyHistogram postLatency) {
+            this.requests = requests;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.getLatency = getLatency;
+            this.postLatency = postLatency;
+        }
+
+        /** @return the rate of successful requests, per second */
+        public double getRequestsPerSecond() {
+            return (elapsedNanos == 0) ? 0 : requests * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "requests=%d errors=%d elapsed=%.2fs throughput=%.0f req/s%n" +
+                            "  GET  %s%n  POST %s",
+                    requests, errors, elapsedNanos / 1e9, getRequestsPerSecond(), getLatency, postLatency);
+        }
+    }
+
+    private final List<URI> links;
+    private final int connections;
+    private final int iterationsPerConnection;
+    private final String[] accounts = new String[NUM_ACCOUNTS];
+
+    /**
+     * Construct a new {@link LoadTestClient}
+     * @param solanaPayUris the Transaction Request URIs to drive (see {@link #generateUris})
+     * @param connections the number of concurrent connections
+     * @param iterationsPerConnection the number of URIs each connection handles (each being a GET
+     *      and a POST)
+     * @throws IllegalArgumentException if any URI is not a Solana Pay Transaction Request URI
+     */
+    public LoadTestClient(List<String> solanaPayUris, int connections, int iterationsPerConnection) {
+        if (solanaPayUris.isEmpty() || connections < 1 || iterationsPerConnection < 0) {
+            throw new IllegalArgumentException("At least one URI and one connection are required");
+        }
+        final ArrayList<URI> links = new ArrayList<>(solanaPayUris.size());
+        for (String uri : solanaPayUris) {
+            links.add(parseLink(uri));
+        }
+        this.links = Collections.unmodifiableList(links);
+        this.connections = connections;
+        this.iterationsPerConnection = iterationsPerConnection;
+
+        final Random random = new Random(0);
+        final byte[] key = new byte[32];
+        for (int i = 0; i < NUM_ACCOUNTS; i++) {
+            random.nextBytes(key);
+            accounts[i] = Base58.encode(key);
+        }
+    }
+
+    /**
+     * Generate Transaction Request URIs for distinct orders at a single endpoint
+     * @param host the link host
+     * @param port the link port
+     * @param path the link path
+     * @param count the number of URIs to generate
+     * @return the Solana Pay URIs (of the form solana:https%3A%2F%2Fhost%3Aport%2Fpath%3Forder%3DN)
+     */
+    public static List<String> generateUris(String host, int port, String path, int count) {
+        final ArrayList<String> uris = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String link = "https://" + host + ":" + port + path + "?order=" + i;
+            try {
+                // Links with query parameters must be URL-encoded within the Solana Pay URI
+                uris.add("solana:" + URLEncoder.encode(link, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e); // UTF-8 is always supported
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * Extract the link from a Transaction Request URI
+     * @param solanaPayUri the Solana Pay URI
+     * @return the https link
+     * @throws IllegalArgumentException if solanaPayUri is not a Transaction Request URI
+     */
+    static URI parseLink(String solanaPayUri) {
+        if (!solanaPayUri.startsWith("solana:")) {
+            throw new IllegalArgumentException("Not a Solana Pay URI: " + solanaPayUri);
+        }
+        String link = solanaPayUri.substring("solana:".length());
+        final int query = link.indexOf('?');
+        if (query != -1) {
+            link = link.substring(0, query); // Solana Pay parameters (e.g. label) are not part of the link
+        }
+        try {
+            link = URLDecoder.decode(link, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e); // UTF-8 is always supported
+        }
+        final URI uri = URI.create(link);
+        if (!"https".equals(uri.getScheme()) || uri.getHost() == null) {
+            throw new IllegalArgumentException("Not a Transaction Request URI: " + solanaPayUri);
+        }
+        return uri;
+    }
+
+    /**
+     * Run the load test, blocking until all connections have completed
+     * @return the {@link Result}
+     * @throws InterruptedException if interrupted while waiting for the connections to complete
+     */
+    public Result run() throws InterruptedException {
+        final LatencyHistogram getLatency = new LatencyHistogram();
+        final LatencyHistogram postLatency = new LatencyHistogram();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+
+        final Thread[] threads = new Thread[connections];
+        final long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            final Worker worker = new Worker(i, getLatency, postLatency, requests, errors);
+            threads[i] = new Thread(worker, "LoadTestClient-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new Result(requests.get(), errors.get(), System.nanoTime() - start, getLatency, postLatency);
+    }
+
+    private final class Worker implements Runnable {
+        private final int id;
+        private final LatencyHistogram getLatency;
+        private final LatencyHistogram postLatency;
+        private final AtomicLong requests;
+        private final AtomicLong errors;
+        private final byte[] lineBuffer = new byte[8192];
+
+        private Socket socket;
+        private InetSocketAddress socketAddress;
+        private InputStream in;
+        private OutputStream out;
+
+        Worker(int id, LatencyHistogram getLatency, LatencyHistogram postLatency, AtomicLong requests,
+               AtomicLong errors) {
+            this.id = id;
+            this.getLatency = getLatency;
+            this.postLatency = postLatency;
+            this.requests = requests;
+            this.errors = errors;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < iterationsPerConnection; i++) {
+                    final URI link = links.get((id * iterationsPerConnection + i) % links.size());
+                    final String target = link.getRawPath() + (link.getRawQuery() == null ? "" : "?" + link.getRawQuery());
+                    final String host = link.getHost() + ":" + link.getPort();
+
+                    exchange(link, "GET " + target + " HTTP/1.1\r\nHost: " + host +
+                            "\r\nAccept: application/json\r\n\r\n", null, "\"label\"", getLatency);
+
+                    final byte[] body = ("{\"account\":\"" + accounts[(id + i) % NUM_ACCOUNTS] + "\"}")
+                            .getBytes(StandardCharsets.UTF_8);
+                    exchange(link, "POST " + target + " HTTP/1.1\r\nHost: " + host +
+                            "\r\nAccept: application/json\r\nContent-Type: application/json\r\nContent-Length: " +
+                            body.length + "\r\n\r\n", body, "\"transaction\"", postLatency);
+                }
+            } finally {
+                disconnect();
+            }
+        }
+
+        private void exchange(URI link, String head, byte[] body, String expected,
+                              LatencyHistogram latency) {
+            final long start = System.nanoTime();
+            try {
+                connect(link);
+                out.write(head.getBytes(StandardCharsets.US_ASCII));
+                if (body != null) {
+                    out.write(body);
+                }
+                out.flush();
+                final String response = readResponse();
+                latency.record(System.nanoTime() - start);
+                if (response.contains(expected)) {
+                    requests.incrementAndGet();
+                } else {
+                    errors.incrementAndGet();
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+                disconnect();
+            }
+        }
+
+        private void connect(URI link) throws IOException {
+            final int port = (link.getPort() == -1) ? 443 : link.getPort();
+            final InetSocketAddress address = new InetSocketAddress(link.getHost(), port);
+            if (socket != null && address.equals(socketAddress)) {
+                return;
+            }
+            disconnect();
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(SOCKET_TIMEOUT_MS);
+            socket.connect(address, SOCKET_TIMEOUT_MS);
+            socketAddress = address;
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+        }
+
+        private void disconnect() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {}
+                socket = null;
+                socketAddress = null;
+            }
+        }
+
+        // Read a response, returning "<status> <body>"
+        private String readResponse() throws IOException {
+            final String statusLine = readLine();
+            final int statusStart = statusLine.indexOf(' ') + 1;
+            if (statusStart == 0 || statusLine.length() < statusStart + 3) {
+                throw new IOException("Malformed status line: " + statusLine);
+            }
+            final String status = statusLine.substring(statusStart, statusStart + 3);
+
+            int contentLength = 0;
+            boolean close = false;
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                final int colon = line.indexOf(':');
+                if (colon == -1) {
+                    continue;
+                }
+                final String name = line.substring(0, colon).trim();
+                final String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = Integer.parseInt(value);
+                } else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) {
+                    close = true;
+                }
+            }
+
+            final ByteArrayOutputStream body = new ByteArrayOutputStream(contentLength);
+            final byte[] chunk = new byte[Math.min(Math.max(contentLength, 1), 8192)];
+            for (int remaining = contentLength; remaining > 0; ) {
+                final int n = in.read(chunk, 0, Math.min(chunk.length, remaining));
+                if (n == -1) {
+                    throw new EOFException("Connection closed while reading response body");
+                }
+                body.write(chunk, 0, n);
+                remaining -= n;
+            }
+            if (close) {
+                disconnect();
+            }
+            return status + " " + new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        private String readLine() throws IOException {
+            int n = 0;
+            while (true) {
+                final int b = in.read();
+                if (b == -1) {
+                    throw new EOFException("Connection closed while reading response");
+                } else if (b == '\n') {
+                    final int end = (n > 0 && lineBuffer[n - 1] == '\r') ? n - 1 : n;
+                    return new String(lineBuffer, 0, end, StandardCharsets.US_ASCII);
+                } else if (n == lineBuffer.length) {
+                    throw new IOException("Response line too long");
+                }
+                lineBuffer[n++] = (byte) b;
+            }
+        }
+    }
+
+    /**
+     * Run a load test against an in-process {@link TransactionRequestServer}, serving
+     * {@link MemoTransactionHandler} transactions on localhost.
+     * <p>Arguments (all optional): --connections=N (default 64), --requests=N (URIs per connection;
+     * default 1000), --loops=N (server event loops; default
+     * {@link TransactionRequestServer#DEFAULT_NUM_EVENT_LOOPS}), --warmup=N (URIs per connection
+     * before measuring; default 100)</p>
+     */
+    public static void main(String[] args) throws Exception {
+        int connections = 64;
+        int requests = 1000;
+        int loops = TransactionRequestServer.DEFAULT_NUM_EVENT_LOOPS;
+        int warmup = 100;
+        for (String arg : args) {
+            final int eq = arg.indexOf('=');
+            final String name = (eq == -1) ? arg : arg.substring(0, eq);
+            final int value;
+            try {
+                value = Integer.parseInt(arg.substring(eq + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid argument: " + arg, e);
+            }
+            switch (name) {
+                case "--connections": connections = value; break;
+                case "--requests": requests = value; break;
+                case "--loops": loops = value; break;
+                case "--warmup": warmup = value; break;
+                default: throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        final byte[] blockhash = new byte[32];
+        try (TransactionRequestServer server = new TransactionRequestServer(
+                new InetSocketAddress("127.0.0.1", 0), loops)) {
+            server.addRoute("/checkout", new MemoTransactionHandler("Load Test",
+                    "https://solanapay.com/src/img/logo.svg", "Load test order", () -> blockhash));
+            server.start();
+
+            final List<String> uris = generateUris("127.0.0.1", server.getPort(), "/checkout", 1000);
+            System.out.println("Serving on port " + server.getPort() + " with " + loops +
+                    " event loops; " + connections + " connections");
+
+            if (warmup > 0) {
+                new LoadTestClient(uris, connections, warmup).run();
+                for (LatencyHistogram histogram : server.getLatencyHistograms().values()) {
+                    histogram.reset();
+                }
+            }
+
+            final Result result = new LoadTestClient(uris, connections, requests).run();
+            System.out.println("Client: " + result);
+            System.out.println("Server:");
+            for (Map.Entry<String, LatencyHistogram> entry : server.getLatencyHistograms().entrySet()) {
+                System.out.println("  " + entry.getKey() + " " + entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * An example {@link TransactionRequestHandler}, which responds with an unsigned legacy transaction
+ * containing a single SPL Memo instruction, signed by (and paid for by) the requesting account.
+ * This is useful as a reference, and as a cheap handler for load testing; real checkout handlers
+ * would build transfers for the order identified by the request query.
+ */
+public final class MemoTransactionHandler implements TransactionRequestHandler {
+    /** The SPL Memo program ID */
+    public static final String MEMO_PROGRAM_ID = "MemoSq4gqABAXKb96qnH8TysNcWxMyWCqXgDLGmfcHr";
+
+    private static final byte[] MEMO_PROGRAM_ID_BYTES = Base58.decodePublicKey(MEMO_PROGRAM_ID);
+    private static final int SIGNATURE_SIZE = 64;
+
+    private final String label;
+    private final String icon;
+    private final String memo;
+    private final Supplier<byte[]> recentBlockhashSupplier;
+
+    /**
+     * Construct a new {@link MemoTransactionHandler}
+     * @param label the label returned in response to GET requests
+     * @param icon the icon URL returned in response to GET requests
+     * @param memo the memo text for each transaction
+     * @param recentBlockhashSupplier supplies the 32-byte recent blockhash for each transaction. It
+     *      is invoked on an event loop thread, and so must not block (e.g. it should return a
+     *      blockhash which is refreshed periodically in the background).
+     */
+    public MemoTransactionHandler(String label, String icon, String memo,
+                                  Supplier<byte[]> recentBlockhashSupplier) {
+        this.label = Objects.requireNonNull(label);
+        this.icon = Objects.requireNonNull(icon);
+        this.memo = Objects.requireNonNull(memo);
+        this.recentBlockhashSupplier = Objects.requireNonNull(recentBlockhashSupplier);
+    }
+
+    @Override
+    public String getLabel() {
+        return label;
+    }
+
+    @Override
+    public String getIcon() {
+        return icon;
+    }
+
+    @Override
+    public CompletionStage<TransactionResponse> createTransaction(TransactionRequest request) {
+        final byte[] payer = Base58.decodePublicKey(request.account);
+        final byte[] recentBlockhash = recentBlockhashSupplier.get();
+        if (recentBlockhash.length != 32) {
+            throw new IllegalStateException("Recent blockhash must be 32 bytes");
+        }
+        final byte[] data = memo.getBytes(StandardCharsets.UTF_8);
+
+        final ByteArrayOutputStream tx = new ByteArrayOutputStream(256 + data.length);
+        tx.write(1); // one (empty) signature, for the payer
+        tx.write(new byte[SIGNATURE_SIZE], 0, SIGNATURE_SIZE);
+        tx.write(1); // header: required signatures
+        tx.write(0); // header: read-only signed accounts
+        tx.write(1); // header: read-only unsigned accounts (the memo program)
+        tx.write(2); // account keys
+        tx.write(payer, 0, payer.length);
+        tx.write(MEMO_PROGRAM_ID_BYTES, 0, MEMO_PROGRAM_ID_BYTES.length);
+        tx.write(recentBlockhash, 0, recentBlockhash.length);
+        tx.write(1); // instructions
+        tx.write(1); // program ID index
+        tx.write(1); // accounts: the payer, as a memo signer
+        tx.write(0);
+        writeCompactU16(tx, data.length);
+        tx.write(data, 0, data.length);
+
+        return CompletableFuture.completedFuture(new TransactionResponse(
+                Base64.getEncoder().encodeToString(tx.toByteArray()), memo));
+    }
+
+    private static void writeCompactU16(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+/**
+ * A Transaction Request endpoint, with its GET responses serialized once up front
+ */
+final class Route {
+    final String path;
+    final TransactionRequestHandler handler;
+    final byte[] getResponseKeepAlive;
+    final byte[] getResponseClose;
+    final LatencyHistogram getLatency = new LatencyHistogram();
+    final LatencyHistogram postLatency = new LatencyHistogram();
+    final LatencyHistogram optionsLatency = new LatencyHistogram();
+
+    Route(String path, TransactionRequestHandler handler) {
+        this.path = path;
+        this.handler = handler;
+        getResponseKeepAlive = HttpResponses.label(handler.getLabel(), handler.getIcon(), true);
+        getResponseClose = HttpResponses.label(handler.getLabel(), handler.getIcon(), false);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.util.Objects;
+
+/**
+ * A Solana Pay Transaction Request POST, as received by a {@link TransactionRequestServer}
+ */
+public final class TransactionRequest {
+    /** The base58-encoded public key of the wallet account making the request */
+    public final String account;
+
+    /** The request path (e.g. "/checkout") */
+    public final String path;
+
+    /** The raw (still percent-encoded) query string of the request, or null if it has none */
+    public final String query;
+
+    /**
+     * Construct a new {@link TransactionRequest}
+     * @param account the base58-encoded public key of the wallet account making the request
+     * @param path the request path
+     * @param query the raw query string of the request, or null
+     */
+    public TransactionRequest(String account, String path, String query) {
+        this.account = Objects.requireNonNull(account);
+        this.path = Objects.requireNonNull(path);
+        this.query = query;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionRequest{" +
+                "account='" + account + '\'' +
+                ", path='" + path + '\'' +
+                ", query='" + query + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Builds the transactions served by a Solana Pay Transaction Request endpoint. Handlers are invoked
+ * on the server's event loop threads, and must not block; any work which may block (such as
+ * fetching a recent blockhash, or querying a checkout system) should be performed asynchronously,
+ * completing the returned {@link CompletionStage} when done.
+ */
+public interface TransactionRequestHandler {
+    /** @return the label returned in response to GET requests (i.e. the merchant name) */
+    String getLabel();
+
+    /** @return the icon URL returned in response to GET requests */
+    String getIcon();
+
+    /**
+     * Create a transaction for the wallet account which made the request
+     * @param request the {@link TransactionRequest}
+     * @return a {@link CompletionStage} which completes with the {@link TransactionResponse}. If it
+     *      completes exceptionally with an {@link IllegalArgumentException}, the request is
+     *      rejected as invalid (HTTP 400); any other exception results in an HTTP 500 response.
+     */
+    CompletionStage<TransactionResponse> createTransaction(TransactionRequest request);
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A reference server for the Solana Pay Transaction Request protocol. Each registered route
+ * answers GET requests with its handler's label and icon (serialized once, when the route is
+ * added), and POST requests with the transaction built by its {@link TransactionRequestHandler}.
+ * <p>Connections are served with non-blocking I/O by a small, fixed set of event loop threads; the
+ * first loop also accepts new connections, which are distributed across all loops round-robin.
+ * Per-route latency histograms record the time from a request being received until its response
+ * is queued, for each of GET, POST and OPTIONS (CORS preflight). Requests for unknown routes, with
+ * disallowed methods, or which are malformed are rejected without being measured.</p>
+ * <p>Connections which make no progress for the idle timeout are closed, and connections beyond
+ * the maximum connection count are refused with 503, so that idle or slow clients cannot exhaust
+ * the server's memory or file descriptors.</p>
+ * <p>The server speaks plain HTTP/1.1 (with keep-alive and pipelining). Transaction Request links
+ * must be https URLs, so TLS is expected to be terminated in front of this server.</p>
+ */
+public final class TransactionRequestServer implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(TransactionRequestServer.class.getName());
+
+    /** Default number of event loop threads */
+    public static final int DEFAULT_NUM_EVENT_LOOPS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /** Default idle timeout, in milliseconds (see {@link #setIdleTimeoutMs(long)}) */
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+
+    /** Default maximum number of open connections (see {@link #setMaxConnections(int)}) */
+    public static final int DEFAULT_MAX_CONNECTIONS = 10000;
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+    private static final long MAX_TICK_MS = 1000;
+
+    private static final byte[] TOO_MANY_CONNECTIONS_RESPONSE = HttpResponses.error(
+            503, "Service Unavailable", "Too many connections", false);
+
+    private final InetSocketAddress bindAddress;
+    private final int numEventLoops;
+
+    // Written only before start(); safely published to the event loops by Thread.start()
+    private final HashMap<String, Route> routes = new HashMap<>();
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    // Written only before start(); safely published to the event loops by Thread.start()
+    private long idleTimeoutNanos = DEFAULT_IDLE_TIMEOUT_MS * 1000000L;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private EventLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private int nextLoop;
+    private boolean started;
+    private boolean closed;
+
+    /**
+     * Construct a new {@link TransactionRequestServer}, with {@link #DEFAULT_NUM_EVENT_LOOPS} event
+     * loop threads
+     * @param bindAddress the address to listen on (a port of 0 selects an ephemeral port)
+     */
+    public TransactionRequestServer(InetSocketAddress bindAddress) {
+        this(bindAddress, DEFAULT_NUM_EVENT_LOOPS);
+    }
+
+    /**
+     * Construct a new {@link TransactionRequestServer}
+     * @param bindAddress the address to listen on (a port of 0 selects an ephemeral port)
+     * @param numEventLoops the number of event loop threads
+     */
+    public TransactionRequestServer(InetSocketAddress bindAddress, int numEventLoops) {
+        if (numEventLoops < 1) {
+            throw new IllegalArgumentException("numEventLoops must be at least 1");
+        }
+        this.bindAddress = bindAddress;
+        this.numEventLoops = numEventLoops;
+    }
+
+    /**
+     * Add a Transaction Request endpoint. Routes must be added before the server is started.
+     * @param path the absolute request path (e.g. "/checkout"), matched exactly
+     * @param handler the {@link TransactionRequestHandler} for this endpoint
+     * @return this server
+     * @throws IllegalArgumentException if path is not absolute, or already has a route
+     * @throws IllegalStateException if the server has been started
+     */
+    public synchronized TransactionRequestServer addRoute(String path, TransactionRequestHandler handler) {
+        if (started) {
+            throw new IllegalStateException("Routes must be added before the server is started");
+        }
+        if (!path.startsWith("/") || path.indexOf('?') != -1) {
+            throw new IllegalArgumentException("path must be an absolute path, without a query");
+        }
+        if (routes.containsKey(path)) {
+            throw new IllegalArgumentException("A route already exists for " + path);
+        }
+        routes.put(path, new Route(path, handler));
+        return this;
+    }
+
+    /**
+     * Set the idle timeout. Connections which receive no complete request, and write no response
+     * bytes, for this long are closed. Must be set before the server is started.
+     * @param idleTimeoutMs the idle timeout, in milliseconds
+     * @return this server
+     * @throws IllegalArgumentException if idleTimeoutMs is not positive
+     * @throws IllegalStateException if the server has been started
+     */
+    public synchronized TransactionRequestServer setIdleTimeoutMs(long idleTimeoutMs) {
+        if (started) {
+            throw new IllegalStateException("The idle timeout must be set before the server is started");
+        }
+        if (idleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("idleTimeoutMs must be positive");
+        }
+        idleTimeoutNanos = idleTimeoutMs * 1000000L;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of open connections. Connections accepted beyond this are sent a 503
+     * response and closed. Must be set before the server is started.
+     * @param maxConnections the maximum number of open connections
+     * @return this server
+     * @throws IllegalArgumentException if maxConnections is not positive
+     * @throws IllegalStateException if the server has been started
+     */
+    public synchronized TransactionRequestServer setMaxConnections(int maxConnections) {
+        if (started) {
+            throw new IllegalStateException("The maximum connection count must be set before the server is started");
+        }
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be positive");
+        }
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * Start listening for, and serving, connections
+     * @throws IOException if the server could not bind to its address
+     * @throws IllegalStateException if the server has already been started
+     */
+    public synchronized void start() throws IOException {
+        if (started) {
+            throw new IllegalStateException("Server has already been started");
+        }
+        started = true;
+
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(bindAddress, 1024);
+            serverChannel.configureBlocking(false);
+
+            // Tick often enough that idle connections are closed within ~1.25x the idle timeout
+            final long tickMs = Math.max(1, Math.min(MAX_TICK_MS, idleTimeoutNanos / 4000000L));
+            loops = new EventLoop[numEventLoops];
+            for (int i = 0; i < numEventLoops; i++) {
+                loops[i] = new EventLoop("TransactionRequestServer-" + i, tickMs);
+            }
+            serverChannel.register(loops[0].selector(), SelectionKey.OP_ACCEPT, new Acceptor());
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    /**
+     * @return the port the server is listening on
+     * @throws IllegalStateException if the server is not running
+     */
+    public synchronized int getPort() {
+        if (!started || closed) {
+            throw new IllegalStateException("Server is not running");
+        }
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /** @return the number of currently open connections */
+    public int getOpenConnectionCount() {
+        return openConnections.get();
+    }
+
+    /**
+     * Get the latency histogram for a route and method
+     * @param method "GET", "POST" or "OPTIONS"
+     * @param path the route path
+     * @return the {@link LatencyHistogram}
+     * @throws IllegalArgumentException if there is no such route or method
+     */
+    public LatencyHistogram getLatencyHistogram(String method, String path) {
+        final Route route = getRoute(path);
+        if (route == null) {
+            throw new IllegalArgumentException("No route exists for " + path);
+        }
+        switch (method) {
+            case "GET": return route.getLatency;
+            case "POST": return route.postLatency;
+            case "OPTIONS": return route.optionsLatency;
+            default: throw new IllegalArgumentException("No latency histogram for method " + method);
+        }
+    }
+
+    /**
+     * @return all latency histograms, keyed by "METHOD path". Only requests to registered routes
+     *      with a supported method are measured.
+     */
+    public Map<String, LatencyHistogram> getLatencyHistograms() {
+        final TreeMap<String, LatencyHistogram> histograms = new TreeMap<>();
+        synchronized (this) {
+            for (Route route : routes.values()) {
+                histograms.put("GET " + route.path, route.getLatency);
+                histograms.put("POST " + route.path, route.postLatency);
+                histograms.put("OPTIONS " + route.path, route.optionsLatency);
+            }
+        }
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /** Stop the server, closing all connections */
+    @Override
+    public void close() {
+        final EventLoop[] loops;
+        synchronized (this) {
+            if (!started || closed) {
+                closed = true;
+                return;
+            }
+            closed = true;
+            loops = this.loops;
+        }
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+        try {
+            for (EventLoop loop : loops) {
+                loop.join(SHUTDOWN_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Routes are immutable once the server is started, so no lock is needed on the event loops
+    Route getRoute(String path) {
+        return routes.get(path);
+    }
+
+    long getIdleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    void onConnectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    /** Accepts connections on the first event loop, and hands them out round-robin */
+    private final class Acceptor implements EventLoop.Handler {
+        @Override
+        public void onSelected(SelectionKey key) {
+            while (true) {
+                final SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed accepting connection", e);
+                    return;
+                }
+                if (channel == null) {
+                    return;
+                }
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    if (openConnections.get() >= maxConnections) {
+                        // Best effort; the response is small enough to fit in the socket buffer
+                        channel.write(ByteBuffer.wrap(TOO_MANY_CONNECTIONS_RESPONSE));
+                        channel.close();
+                        continue;
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed configuring accepted connection", e);
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {}
+                    continue;
+                }
+
+                openConnections.incrementAndGet();
+                final EventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                final HttpConnection connection = new HttpConnection(TransactionRequestServer.this, loop, channel);
+                if (loop.inEventLoop()) {
+                    connection.register();
+                } else if (!loop.execute(connection::register)) {
+                    connection.abort(); // the loop has already shut down
+                }
+            }
+        }
+
+        @Override
+        public void onTick(long nowNanos) {}
+
+        @Override
+        public void onShutdown() {
+            try {
+                serverChannel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import java.util.Objects;
+
+/**
+ * The response to a Solana Pay Transaction Request POST
+ */
+public final class TransactionResponse {
+    /** The base64-encoded serialized transaction */
+    public final String transaction;
+
+    /** An optional message describing the transaction to the user, or null */
+    public final String message;
+
+    /**
+     * Construct a new {@link TransactionResponse}
+     * @param transaction the base64-encoded serialized transaction
+     * @param message an optional message describing the transaction to the user, or null
+     */
+    public TransactionResponse(String transaction, String message) {
+        this.transaction = Objects.requireNonNull(transaction);
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionResponse{" +
+                "transaction='" + transaction + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EventLoopUnitTests {
+    @Test
+    public void testExecute() throws IOException, InterruptedException {
+        final EventLoop loop = new EventLoop("test", 1000);
+        loop.start();
+        final CountDownLatch ran = new CountDownLatch(1);
+        final boolean[] inEventLoop = new boolean[1];
+        assertTrue(loop.execute(() -> {
+            inEventLoop[0] = loop.inEventLoop();
+            ran.countDown();
+        }));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(inEventLoop[0]);
+        assertFalse(loop.inEventLoop());
+        loop.shutdown();
+        loop.join(5000);
+    }
+
+    @Test
+    public void testExecuteRejectedAfterShutdown() throws IOException, InterruptedException {
+        final EventLoop loop = new EventLoop("test", 1000);
+        loop.start();
+        loop.shutdown();
+        loop.join(5000);
+        assertFalse(loop.execute(() -> fail("Task must not run after the loop has terminated")));
+    }
+}
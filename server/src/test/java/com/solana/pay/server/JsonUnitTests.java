@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class JsonUnitTests {
+    @Test
+    public void testQuote() {
+        assertEquals("\"abc\"", Json.quote(new StringBuilder(), "abc").toString());
+        assertEquals("\"a\\\"b\\\\c\\n\\t\\u0001\"", Json.quote(new StringBuilder(), "a\"b\\c\n\t\u0001").toString());
+        assertEquals("\"\\u2028\\u2029\"", Json.quote(new StringBuilder(), "\u2028\u2029").toString());
+        assertEquals("\"caf\u00e9\"", Json.quote(new StringBuilder(), "caf\u00e9").toString());
+    }
+
+    @Test
+    public void testGetStringMember() {
+        assertEquals("abc", Json.getStringMember("{\"account\":\"abc\"}", "account"));
+        assertEquals("abc", Json.getStringMember(" { \"x\" : [1, {\"y\": null}, true, -1.5e3], \"account\" : \"abc\" } ", "account"));
+        assertEquals("a\"b\u00e9\n", Json.getStringMember("{\"account\":\"a\\\"b\\u00e9\\n\"}", "account"));
+        assertNull(Json.getStringMember("{}", "account"));
+        assertNull(Json.getStringMember("{\"other\":\"abc\"}", "account"));
+    }
+
+    @Test
+    public void testGetStringMemberInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> Json.getStringMember("", "account"));
+        assertThrows(IllegalArgumentException.class, () -> Json.getStringMember("[]", "account"));
+        assertThrows(IllegalArgumentException.class, () -> Json.getStringMember("{\"account\":1}", "account"));
+        assertThrows(IllegalArgumentException.class, () -> Json.getStringMember("{\"account\":\"abc\"", "account"));
+        assertThrows(IllegalArgumentException.class, () -> Json.getStringMember("{\"account\":\"abc\"} x", "account"));
+        assertThrows(IllegalArgumentException.class, () -> Json.getStringMember("{\"account\":\"a\\qc\"}", "account"));
+    }
+
+    @Test
+    public void testGetStringMemberDepthLimited() {
+        final StringBuilder json = new StringBuilder("{\"x\":");
+        for (int i = 0; i < 1000; i++) {
+            json.append('[');
+        }
+        assertThrows(IllegalArgumentException.class, () -> Json.getStringMember(json.toString(), "account"));
+    }
+}
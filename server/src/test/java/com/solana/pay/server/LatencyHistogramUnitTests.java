@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramUnitTests {
+    @Test
+    public void testBucketBoundsCoverAllValues() {
+        final long[] values = { 0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+        for (long value : values) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertTrue("upper bound of " + value, LatencyHistogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue("lower bound of " + value, LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testBucketPrecision() {
+        for (long value = 16; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 + 1) {
+            final long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            assertTrue("relative error for " + value, (upper - value) * 16 <= value);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getNanosAtPercentile(99));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getMeanNanos());
+        assertEquals(1000000, histogram.getMaxNanos());
+        assertEquals(1000000, histogram.getNanosAtPercentile(100));
+
+        final long p50 = histogram.getNanosAtPercentile(50);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 17 / 16);
+        final long p99 = histogram.getNanosAtPercentile(99);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        final long p0 = histogram.getNanosAtPercentile(0);
+        assertTrue(p0 >= 1000 && p0 <= 1000 * 17 / 16);
+    }
+
+    @Test
+    public void testNegativeRecordedAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void testAddAndReset() {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        a.record(100);
+        b.record(300);
+        b.record(500);
+        a.add(b);
+        assertEquals(3, a.getCount());
+        assertEquals(300, a.getMeanNanos());
+        assertEquals(500, a.getMaxNanos());
+        assertEquals(2, b.getCount());
+
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getMaxNanos());
+        assertEquals(0, a.getNanosAtPercentile(50));
+    }
+
+    @Test
+    public void testInvalidPercentile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertThrows(IllegalArgumentException.class, () -> histogram.getNanosAtPercentile(-1));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getNanosAtPercentile(100.5));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getNanosAtPercentile(Double.NaN));
+    }
+}
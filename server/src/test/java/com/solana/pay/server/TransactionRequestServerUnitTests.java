@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2022 Solana Mobile Inc.
+ */
+
+package com.solana.pay.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TransactionRequestServerUnitTests {
+    private static final String ACCOUNT = "84npKJKZy8ixjdq8UChZULDUea2Twt8ThxjiqKd7QZ54";
+    private static final String ICON = "https://solanapay.com/src/img/logo.svg";
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private TransactionRequestServer server;
+
+    private static final class Response {
+        final int status;
+        final String head;
+        final String body;
+
+        Response(int status, String head, String body) {
+            this.status = status;
+            this.head = head;
+            this.body = body;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new TransactionRequestServer(new InetSocketAddress("127.0.0.1", 0), 2);
+        server.addRoute("/memo", new MemoTransactionHandler("Memo", ICON, "Thank you!", () -> new byte[32]));
+        server.addRoute("/async", new TransactionRequestHandler() {
+            @Override public String getLabel() { return "Async"; }
+            @Override public String getIcon() { return ICON; }
+            @Override
+            public CompletionStage<TransactionResponse> createTransaction(TransactionRequest request) {
+                final CompletableFuture<TransactionResponse> future = new CompletableFuture<>();
+                executor.schedule(() -> {
+                    if ("fail".equals(request.query)) {
+                        future.completeExceptionally(new IllegalStateException("failed"));
+                    } else if ("reject".equals(request.query)) {
+                        future.completeExceptionally(new IllegalArgumentException("Order not found"));
+                    } else {
+                        future.complete(new TransactionResponse("AQID", request.query));
+                    }
+                }, 20, TimeUnit.MILLISECONDS);
+                return future;
+            }
+        });
+        server.addRoute("/throws", new TransactionRequestHandler() {
+            @Override public String getLabel() { return "Throws"; }
+            @Override public String getIcon() { return ICON; }
+            @Override
+            public CompletionStage<TransactionResponse> createTransaction(TransactionRequest request) {
+                throw new IllegalStateException("handler bug");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        try (Socket socket = connect()) {
+            final Response response = exchange(socket, "GET /memo?order=1 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            assertEquals(200, response.status);
+            assertTrue(response.head.contains("Access-Control-Allow-Origin: *"));
+            assertEquals("Memo", Json.getStringMember(response.body, "label"));
+            assertEquals(ICON, Json.getStringMember(response.body, "icon"));
+        }
+        assertEquals(1, server.getLatencyHistogram("GET", "/memo").getCount());
+    }
+
+    @Test
+    public void testPostMemoTransaction() throws IOException {
+        try (Socket socket = connect()) {
+            final Response response = post(socket, "/memo", "{\"account\":\"" + ACCOUNT + "\"}");
+            assertEquals(200, response.status);
+            assertEquals("Thank you!", Json.getStringMember(response.body, "message"));
+
+            final byte[] tx = Base64.getDecoder().decode(Json.getStringMember(response.body, "transaction"));
+            assertEquals(1, tx[0]); // one signature
+            assertArrayEquals(new byte[] { 1, 0, 1, 2 }, Arrays.copyOfRange(tx, 65, 69));
+            assertArrayEquals(Base58.decodePublicKey(ACCOUNT), Arrays.copyOfRange(tx, 69, 101));
+            assertArrayEquals(Base58.decodePublicKey(MemoTransactionHandler.MEMO_PROGRAM_ID),
+                    Arrays.copyOfRange(tx, 101, 133));
+            assertEquals("Thank you!", new String(tx, tx.length - 10, 10, StandardCharsets.UTF_8));
+        }
+        assertEquals(1, server.getLatencyHistogram("POST", "/memo").getCount());
+    }
+
+    @Test
+    public void testKeepAliveAndPipelining() throws IOException {
+        try (Socket socket = connect()) {
+            final String body = "{\"account\":\"" + ACCOUNT + "\"}";
+            final String requests = "GET /memo HTTP/1.1\r\n\r\n" +
+                    "POST /async?order=7 HTTP/1.1\r\nContent-Length: " + body.length() + "\r\n\r\n" + body +
+                    "GET /async HTTP/1.1\r\n\r\n";
+            socket.getOutputStream().write(requests.getBytes(StandardCharsets.US_ASCII));
+            final Response first = readResponse(socket.getInputStream());
+            final Response second = readResponse(socket.getInputStream());
+            final Response third = readResponse(socket.getInputStream());
+            assertEquals("Memo", Json.getStringMember(first.body, "label"));
+            assertEquals("order=7", Json.getStringMember(second.body, "message"));
+            assertEquals("AQID", Json.getStringMember(second.body, "transaction"));
+            assertEquals("Async", Json.getStringMember(third.body, "label"));
+
+            // And the connection remains usable afterwards
+            assertEquals(200, exchange(socket, "GET /memo HTTP/1.1\r\n\r\n").status);
+        }
+    }
+
+    @Test
+    public void testConnectionClose() throws IOException {
+        try (Socket socket = connect()) {
+            final Response response = exchange(socket, "GET /memo HTTP/1.1\r\nConnection: close\r\n\r\n");
+            assertEquals(200, response.status);
+            assertTrue(response.head.contains("Connection: close"));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        try (Socket socket = connect()) {
+            assertEquals(200, exchange(socket, "GET /memo HTTP/1.0\r\n\r\n").status);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void testHandlerErrors() throws IOException {
+        try (Socket socket = connect()) {
+            final String body = "{\"account\":\"" + ACCOUNT + "\"}";
+            final Response rejected = post(socket, "/async?reject", body);
+            assertEquals(400, rejected.status);
+            assertEquals("Order not found", Json.getStringMember(rejected.body, "message"));
+            assertEquals(500, post(socket, "/async?fail", body).status);
+            assertEquals(500, post(socket, "/throws", body).status);
+        }
+    }
+
+    @Test
+    public void testRequestErrors() throws IOException {
+        try (Socket socket = connect()) {
+            assertEquals(404, exchange(socket, "GET /missing HTTP/1.1\r\n\r\n").status);
+            final Response notAllowed = exchange(socket, "PUT /memo HTTP/1.1\r\nContent-Length: 0\r\n\r\n");
+            assertEquals(405, notAllowed.status);
+            assertTrue(notAllowed.head.contains("Allow: "));
+            assertEquals(204, exchange(socket, "OPTIONS /memo HTTP/1.1\r\n\r\n").status);
+            assertEquals(400, post(socket, "/memo", "{}").status);
+            assertEquals(400, post(socket, "/memo", "{\"account\":\"notakey\"}").status);
+            assertEquals(400, post(socket, "/memo", "not json").status);
+            // The largest 41-character base58 value once overflowed the decoder
+            assertEquals(400, post(socket, "/memo", "{\"account\":\"zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz\"}").status);
+            assertEquals(400, post(socket, "/memo", "{\"account\":\"" + ACCOUNT + ACCOUNT + "\"}").status);
+            assertEquals(200, exchange(socket, "GET /memo HTTP/1.1\r\n\r\n").status);
+        }
+        assertEquals(5, server.getLatencyHistogram("POST", "/memo").getCount());
+        assertEquals(1, server.getLatencyHistogram("OPTIONS", "/memo").getCount());
+
+        try (Socket socket = connect()) {
+            assertEquals(413, exchange(socket, "POST /memo HTTP/1.1\r\nContent-Length: 1000000\r\n\r\n").status);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        try (Socket socket = connect()) {
+            assertEquals(400, exchange(socket, "GARBAGE\r\n\r\n").status);
+        }
+        try (Socket socket = connect()) {
+            final Response response = exchange(socket, "POST /memo HTTP/1.1\r\nContent-Length: 2\r\n" +
+                    "Content-Length: 60\r\n\r\n{}");
+            assertEquals(400, response.status);
+            assertEquals("Conflicting Content-Length headers", Json.getStringMember(response.body, "message"));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        try (Socket socket = connect()) {
+            // Repeated, but consistent, values are allowed
+            assertEquals(400, post(socket, "/memo", "{}").status);
+            assertEquals(200, exchange(socket, "GET /memo HTTP/1.1\r\nContent-Length: 0\r\nContent-Length: 0\r\n\r\n").status);
+        }
+        try (Socket socket = connect()) {
+            assertEquals(505, exchange(socket, "GET /memo HTTP/2.0\r\n\r\n").status);
+        }
+        try (Socket socket = connect()) {
+            final StringBuilder request = new StringBuilder("GET /memo HTTP/1.1\r\n");
+            while (request.length() < 10000) {
+                request.append("X-Padding: 0123456789012345678901234567890123456789\r\n");
+            }
+            assertEquals(431, exchange(socket, request.append("\r\n").toString()).status);
+        }
+    }
+
+    @Test
+    public void testIdleConnectionsClosed() throws IOException, InterruptedException {
+        try (TransactionRequestServer other = new TransactionRequestServer(new InetSocketAddress("127.0.0.1", 0), 1)) {
+            other.addRoute("/memo", new MemoTransactionHandler("Memo", ICON, "memo", () -> new byte[32]));
+            other.setIdleTimeoutMs(200);
+            other.start();
+
+            try (Socket idle = new Socket("127.0.0.1", other.getPort());
+                 Socket slow = new Socket("127.0.0.1", other.getPort());
+                 Socket active = new Socket("127.0.0.1", other.getPort())) {
+                idle.setSoTimeout(5000);
+                slow.setSoTimeout(5000);
+                active.setSoTimeout(5000);
+
+                // A request sent too slowly is answered with 408, even though bytes keep arriving
+                slow.getOutputStream().write("GET /memo HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+                final long start = System.nanoTime();
+                for (int i = 0; i < 6; i++) {
+                    Thread.sleep(50);
+                    assertEquals(200, exchange(active, "GET /memo HTTP/1.1\r\n\r\n").status);
+                    try {
+                        slow.getOutputStream().write("X-Slow: 1\r\n".getBytes(StandardCharsets.US_ASCII));
+                    } catch (IOException e) {
+                        break; // the server has already timed out the request
+                    }
+                }
+                assertEquals(408, readResponse(slow.getInputStream()).status);
+                assertEquals(-1, slow.getInputStream().read());
+
+                // An idle connection is closed without a response
+                assertEquals(-1, idle.getInputStream().read());
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+                // A connection making progress is not
+                assertEquals(200, exchange(active, "GET /memo HTTP/1.1\r\n\r\n").status);
+            }
+            waitForOpenConnectionCount(other, 0);
+        }
+    }
+
+    @Test
+    public void testMaxConnections() throws IOException, InterruptedException {
+        try (TransactionRequestServer other = new TransactionRequestServer(new InetSocketAddress("127.0.0.1", 0), 2)) {
+            other.addRoute("/memo", new MemoTransactionHandler("Memo", ICON, "memo", () -> new byte[32]));
+            other.setMaxConnections(1);
+            other.start();
+
+            try (Socket first = new Socket("127.0.0.1", other.getPort())) {
+                first.setSoTimeout(5000);
+                assertEquals(200, exchange(first, "GET /memo HTTP/1.1\r\n\r\n").status);
+                try (Socket refused = new Socket("127.0.0.1", other.getPort())) {
+                    refused.setSoTimeout(5000);
+                    assertEquals(503, readResponse(refused.getInputStream()).status);
+                    assertEquals(-1, refused.getInputStream().read());
+                }
+                assertEquals(1, other.getOpenConnectionCount());
+            }
+            waitForOpenConnectionCount(other, 0);
+
+            try (Socket next = new Socket("127.0.0.1", other.getPort())) {
+                next.setSoTimeout(5000);
+                assertEquals(200, exchange(next, "GET /memo HTTP/1.1\r\n\r\n").status);
+            }
+        }
+    }
+
+    @Test
+    public void testRoutesFixedOnceStarted() {
+        assertThrows(IllegalStateException.class, () -> server.addRoute("/other",
+                new MemoTransactionHandler("Other", ICON, "memo", () -> new byte[32])));
+        assertThrows(IllegalArgumentException.class, () -> server.getLatencyHistogram("GET", "/missing"));
+        assertThrows(IllegalArgumentException.class, () -> server.getLatencyHistogram("PUT", "/memo"));
+        assertThrows(IllegalStateException.class, () -> server.setIdleTimeoutMs(1000));
+        assertThrows(IllegalStateException.class, () -> server.setMaxConnections(10));
+        assertEquals(9, server.getLatencyHistograms().size());
+    }
+
+    @Test
+    public void testInvalidRoutes() {
+        final TransactionRequestServer other = new TransactionRequestServer(new InetSocketAddress(0), 1);
+        final TransactionRequestHandler handler = new MemoTransactionHandler("Other", ICON, "memo", () -> new byte[32]);
+        assertThrows(IllegalArgumentException.class, () -> other.addRoute("relative", handler));
+        assertThrows(IllegalArgumentException.class, () -> other.addRoute("/query?x=1", handler));
+        other.addRoute("/path", handler);
+        assertThrows(IllegalArgumentException.class, () -> other.addRoute("/path", handler));
+        assertThrows(IllegalArgumentException.class, () -> new TransactionRequestServer(new InetSocketAddress(0), 0));
+        assertThrows(IllegalArgumentException.class, () -> other.setIdleTimeoutMs(0));
+        assertThrows(IllegalArgumentException.class, () -> other.setMaxConnections(0));
+    }
+
+    @Test
+    public void testLoadTestUris() {
+        final List<String> uris = LoadTestClient.generateUris("localhost", 8443, "/checkout", 3);
+        assertEquals(3, uris.size());
+        assertEquals("solana:https%3A%2F%2Flocalhost%3A8443%2Fcheckout%3Forder%3D2", uris.get(2));
+        final URI link = LoadTestClient.parseLink(uris.get(2));
+        assertEquals("localhost", link.getHost());
+        assertEquals(8443, link.getPort());
+        assertEquals("/checkout", link.getPath());
+        assertEquals("order=2", link.getQuery());
+        assertEquals("/checkout", LoadTestClient.parseLink("solana:https://localhost/checkout?label=x").getPath());
+        assertThrows(IllegalArgumentException.class, () -> LoadTestClient.parseLink("solana:" + ACCOUNT));
+        assertThrows(IllegalArgumentException.class, () -> LoadTestClient.parseLink("https://localhost/checkout"));
+    }
+
+    @Test
+    public void testLoadTest() throws InterruptedException {
+        final List<String> uris = LoadTestClient.generateUris("127.0.0.1", server.getPort(), "/memo", 10);
+        final LoadTestClient.Result result = new LoadTestClient(uris, 8, 25).run();
+        assertEquals(0, result.errors);
+        assertEquals(8 * 25 * 2, result.requests);
+        assertEquals(8 * 25, result.getLatency.getCount());
+        assertEquals(8 * 25, result.postLatency.getCount());
+        assertEquals(8 * 25, server.getLatencyHistogram("GET", "/memo").getCount());
+        assertEquals(8 * 25, server.getLatencyHistogram("POST", "/memo").getCount());
+        assertTrue(result.getRequestsPerSecond() > 0);
+    }
+
+    private static void waitForOpenConnectionCount(TransactionRequestServer server, int count)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getOpenConnectionCount() != count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, server.getOpenConnectionCount());
+    }
+
+    private Socket connect() throws IOException {
+        final Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static Response post(Socket socket, String target, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return exchange(socket, "POST " + target + " HTTP/1.1\r\nContent-Type: application/json\r\n" +
+                "Content-Length: " + bytes.length + "\r\n\r\n" + body);
+    }
+
+    private static Response exchange(Socket socket, String request) throws IOException {
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.UTF_8));
+        return readResponse(socket.getInputStream());
+    }
+
+    private static Response readResponse(InputStream in) throws IOException {
+        final ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (true) {
+            final int b = in.read();
+            if (b == -1) {
+                throw new IOException("Connection closed");
+            }
+            head.write(b);
+            final byte[] bytes = head.toByteArray();
+            final int n = bytes.length;
+            if (n >= 4 && bytes[n - 4] == '\r' && bytes[n - 3] == '\n' && bytes[n - 2] == '\r' && bytes[n - 1] == '\n') {
+                break;
+            }
+        }
+        final String headString = new String(head.toByteArray(), StandardCharsets.US_ASCII);
+        int contentLength = 0;
+        for (String line : headString.split("\r\n")) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        final byte[] body = new byte[contentLength];
+        for (int offset = 0; offset < contentLength; ) {
+            final int n = in.read(body, offset, contentLength - offset);
+            if (n == -1) {
+                throw new IOException("Connection closed");
+            }
+            offset += n;
+        }
+        return new Response(Integer.parseInt(headString.substring(9, 12)), headString,
+                new String(body, StandardCharsets.UTF_8));
+    }
+}